@@ -0,0 +1,110 @@
+package me.tooster.MTG;
+
+import me.tooster.MTG.exceptions.MTGException;
+import me.tooster.MTG.models.CardModel;
+import me.tooster.MTG.models.DeckModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static me.tooster.MTG.models.DeckModel.Pile.HAND;
+import static me.tooster.MTG.models.DeckModel.Pile.LIBRARY;
+
+/**
+ * Deck operations on the default 60 card deck: building, resetting, looking cards up the way commands do and moving
+ * them between piles. Lookups go through the deck's indexes, so they don't depend on the position of the card in the
+ * deck.
+ * <p>
+ * Card models are built in code from the same data as the default deck, because the resource manager reads resources
+ * from the file system and can't read them from the benchmarks jar.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DeckBenchmark {
+
+    private final Supplier<Integer> IDGenerator = new Supplier<>() {
+        private int nextID = 0;
+
+        @Override
+        public Integer get() { return nextID++; }
+    };
+
+    private DeckModel model;
+    private Player    owner;
+    private Deck      deck;
+    private String    lastID;    // ID of the last card of the library
+    private String    lastLabel; // unique name@ID label of the last card
+    private Card      lastCard;
+
+    @Setup
+    public void setup() throws MTGException {
+        model = new DeckModel();
+        model.name = "defaults";
+        addCards(new CardModel(Map.of("name", "Rustwing Falcon", "mana", "W", "types", List.of("creature"),
+                "subtypes", List.of("bird"), "power", 1, "toughness", 2, "allow_many", true)), 10);
+        addCards(new CardModel(Map.of("name", "Star Crowned Stag", "mana", "3W", "types", List.of("creature"),
+                "subtypes", List.of("elk"), "power", 3, "toughness", 3, "allow_many", true)), 10);
+        addCards(new CardModel(Map.of("name", "Take Vengeance", "mana", "1W", "types", List.of("sorcery"),
+                "allow_many", true)), 10);
+        addCards(new CardModel(Map.of("name", "Trusty Packbeast", "mana", "2W", "types", List.of("creature"),
+                "subtypes", List.of("beast"), "power", 2, "toughness", 3, "allow_many", true)), 10);
+        addCards(new CardModel(Map.of("name", "Plains", "mana", "W", "supertypes", List.of("basic"),
+                "types", List.of("land"))), 20);
+
+        owner = new Player(null);
+        deck = Deck.build(IDGenerator, owner, model);
+        var library = deck.piles.get(LIBRARY);
+        lastCard = library.get(library.size() - 1);
+        lastID = String.valueOf(lastCard.ID);
+        lastLabel = lastCard.toString();
+    }
+
+    private void addCards(CardModel card, int copies) {
+        for (int i = 0; i < copies; i++) model.piles.get(LIBRARY).add(card);
+    }
+
+    @Benchmark
+    public Deck build() throws MTGException { return Deck.build(IDGenerator, owner, model); }
+
+    /** draws an opening hand first, so the reset has cards to return to the library */
+    @Benchmark
+    public Deck drawAndReset() throws MTGException {
+        for (int i = 0; i < 7; i++) deck.move(LIBRARY, 0, HAND, 0);
+        deck.reset();
+        return deck;
+    }
+
+    @Benchmark
+    public Card findCardByID() { return deck.findCard(lastID); }
+
+    @Benchmark
+    public Card findCardByLabel() { return deck.findCard(lastLabel); }
+
+    /**
+     * prefix shared by the labels of ten cards, the lookup finds the first label with it and fails on the next one,
+     * two probes of the label index however many cards match
+     */
+    @Benchmark
+    public Card findCardAmbiguous() { return deck.findCard("Trusty"); }
+
+    @Benchmark
+    public Deck moveByIndex() throws MTGException {
+        deck.move(LIBRARY, 0, HAND, 0);
+        deck.move(HAND, 0, LIBRARY, 0);
+        return deck;
+    }
+
+    @Benchmark
+    public Deck moveCard() throws MTGException {
+        deck.move(lastCard, LIBRARY, HAND);
+        deck.move(lastCard, HAND, LIBRARY);
+        return deck;
+    }
+}
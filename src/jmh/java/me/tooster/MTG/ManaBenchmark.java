@@ -0,0 +1,87 @@
+package me.tooster.MTG;
+
+import me.tooster.MTG.exceptions.ManaException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mana operations on the hot path of casting: parsing and interning the cost format, checking if the pool satisfies
+ * the cost, paying for it from a copy of the pool and adding mana of a tapped land. Operations are compared with the
+ * {@link EnumMapMana} baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ManaBenchmark {
+
+    @Param({"W", "2WW", "3UUBRG", "12WUBRGC"})
+    String format;
+
+    private Mana        cost;
+    private Mana        pool;
+    private EnumMapMana enumMapCost;
+    private EnumMapMana enumMapPool;
+
+    @Setup
+    public void setup() throws ManaException {
+        cost = new Mana.Cost(format);
+        pool = new Mana("20WWWUUUBBBRRRGGGCC");
+        enumMapCost = new EnumMapMana(format);
+        enumMapPool = new EnumMapMana("20WWWUUUBBBRRRGGGCC");
+    }
+
+    @Benchmark
+    public Mana parse() throws ManaException { return new Mana(format); }
+
+    @Benchmark
+    public EnumMapMana parseEnumMap() throws ManaException { return new EnumMapMana(format); }
+
+    @Benchmark
+    public Mana intern() throws ManaException { return Mana.Cost.of(format); }
+
+    @Benchmark
+    public boolean satisfies() { return pool.satisfies(cost); }
+
+    @Benchmark
+    public boolean satisfiesEnumMap() { return enumMapPool.satisfies(enumMapCost); }
+
+    @Benchmark
+    public Mana copy() { return new Mana(pool); }
+
+    @Benchmark
+    public EnumMapMana copyEnumMap() { return new EnumMapMana(enumMapPool); }
+
+    /** includes the copy of the pool, compare with {@link #copy()} */
+    @Benchmark
+    public Mana payFor() throws ManaException {
+        Mana paying = new Mana(pool);
+        paying.payFor(cost);
+        return paying;
+    }
+
+    /** includes the copy of the pool, compare with {@link #copyEnumMap()} */
+    @Benchmark
+    public EnumMapMana payForEnumMap() throws ManaException {
+        EnumMapMana paying = new EnumMapMana(enumMapPool);
+        paying.payFor(enumMapCost);
+        return paying;
+    }
+
+    /** mana of a tapped land added to the pool, the pool grows between the iterations */
+    @Benchmark
+    public Mana addMana() {
+        pool.addMana(cost);
+        return pool;
+    }
+
+    /** mana of a tapped land added to the pool, the pool grows between the iterations */
+    @Benchmark
+    public EnumMapMana addManaEnumMap() {
+        enumMapPool.addMana(enumMapCost);
+        return enumMapPool;
+    }
+}
@@ -0,0 +1,61 @@
+package me.tooster.common;
+
+import me.tooster.common.proto.Messages.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protocol framing: varint-delimited encode and decode of typical messages, the same way connections write and read
+ * them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessagesBenchmark {
+
+    @Param({"command", "chat", "hand"})
+    String kind;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+    private Message                     message;
+    private byte[]                      delimited;
+
+    @Setup
+    public void setup() throws IOException {
+        message = switch (kind) {
+            case "command" -> Message.newBuilder()
+                    .setCommandMsg(CommandMsg.newBuilder().setCommand("/cast 42")).build();
+            case "chat" -> Message.newBuilder().setVisualMsg(VisualMsg.newBuilder()
+                    .setVariant(VisualMsg.Variant.CHAT).setFrom("alice#1").setTo("bob#2")
+                    .setMsg("good game, want a rematch after this one?")).build();
+            case "hand" -> {
+                var hand = new StringBuilder("your  hand:\n");
+                for (int i = 0; i < 8; i++) hand.append("- Trusty Packbeast@").append(100 + i).append('\n');
+                yield Message.newBuilder().setVisualMsg(VisualMsg.newBuilder()
+                        .setVariant(VisualMsg.Variant.INFO).setMsg(hand.toString())).build();
+            }
+            default -> throw new IllegalArgumentException(kind);
+        };
+        message.writeDelimitedTo(out);
+        delimited = out.toByteArray();
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        out.reset();
+        message.writeDelimitedTo(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public Message decode() throws IOException {
+        return Message.parseDelimitedFrom(new ByteArrayInputStream(delimited));
+    }
+}
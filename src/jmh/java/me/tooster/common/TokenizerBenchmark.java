@@ -0,0 +1,68 @@
+package me.tooster.common;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splitting input on parts with {@link Parts} compared with the regular expression versions of
+ * {@link Formatter#splitParts(String)} and {@link Formatter#removePart(Integer, String)} it replaced, which compiled
+ * the pattern on every call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TokenizerBenchmark {
+
+    @Param({"/cast 42", "/m bob#2 good game, want a rematch?", "/deck select \"my  deck\" now"})
+    String input;
+
+    @Benchmark
+    public List<String> splitRegex() {
+        List<String> matchList = new ArrayList<>();
+        Pattern regex = Pattern.compile("[^\\s\"]+|\"([^\"]*)\"");
+        Matcher regexMatcher = regex.matcher(input);
+        while (regexMatcher.find())
+            matchList.add(regexMatcher.group(1) != null ? regexMatcher.group(1) : regexMatcher.group());
+        return matchList;
+    }
+
+    /** all parts materialized, as splitParts() returns them */
+    @Benchmark
+    public List<String> splitParts() { return Formatter.splitParts(input); }
+
+    /** offsets only, as the router does for input that doesn't resolve to a command */
+    @Benchmark
+    public Parts partsOffsets() { return Parts.of(input); }
+
+    /** command part and the rest of the input, as chat commands read it */
+    @Benchmark
+    public String partsCommandAndRest() {
+        Parts parts = Parts.of(input);
+        return parts.get(0) + parts.rest(1);
+    }
+
+    @Benchmark
+    public String removePartRegex() {
+        Pattern regex = Pattern.compile("[^\\s\"]+\\s*|\"[^\"]*\"\\s*");
+        Matcher regexMatcher = regex.matcher(input);
+        int i = 0;
+        int start = 0, end = 0;
+        while (regexMatcher.find())
+            if (i++ == 0) {
+                start = regexMatcher.start();
+                end = regexMatcher.end();
+            }
+        return input.substring(0, start) + input.substring(end);
+    }
+
+    @Benchmark
+    public String removePart() { return Formatter.removePart(0, input); }
+}
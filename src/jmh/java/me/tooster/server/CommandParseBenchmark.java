@@ -0,0 +1,50 @@
+package me.tooster.server;
+
+import me.tooster.MTG.MTGCommand;
+import me.tooster.common.Command;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command parsing of remote input: by each controller separately, by both controllers one after another and by the
+ * router over both controllers, which is what the server does for every input.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandParseBenchmark {
+
+    @Param({"/cast 42", "/deck select default", "/m bob#2 good game", "hello there"})
+    String input;
+
+    private Command.Controller<ServerCommand> serverController;
+    private Command.Controller<MTGCommand>    mtgController;
+    private Command.Router                    router;
+
+    @Setup
+    public void setup() {
+        Object owner = new Object();
+        serverController = new Command.Controller<>(ServerCommand.class, owner);
+        mtgController = new Command.Controller<>(MTGCommand.class, owner);
+        router = new Command.Router(mtgController, serverController);
+    }
+
+    @Benchmark
+    public Command.Compiled<ServerCommand> parseServer() { return serverController.parse(input); }
+
+    @Benchmark
+    public Command.Compiled<MTGCommand> parseMTG() { return mtgController.parse(input); }
+
+    @Benchmark
+    public Object parseBoth() {
+        var server = serverController.parse(input);
+        return server.cmd != null ? server : mtgController.parse(input);
+    }
+
+    @Benchmark
+    public Object route() { return router.route(input); }
+}
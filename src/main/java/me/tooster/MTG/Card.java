@@ -22,7 +22,9 @@ public class Card {
     public final int            ID;                // integer id that will be displayed on the board.
     public final Deck           deck;              // deck containing the card
     public final EnumSet<Flag>  flags;             // card specific flags to represent the status and properties
+    private final String        label;             // name@ID shown to players and used to find the card
     public       DeckModel.Pile pile;              // pile in which the card currently is
+    int                         slot;              // slot of the card in the pile, maintained by CardPile
     private      Player         controller;        // pile containing current card
     private      Mana           cost;              // mana cost of the card
 
@@ -43,12 +45,13 @@ public class Card {
         this.ID = ID;
         this.deck = deck;
         this.model = model;
+        label = model.name + "@" + ID;
         flags = EnumSet.noneOf(Flag.class);
         reset();
     }
 
     @Override
-    public String toString() { return model.name + "@" + ID; }
+    public String toString() { return label; }
 
     /**
      * Card factory.<br>
@@ -70,9 +73,9 @@ public class Card {
         controller = null;
         flags.clear();
 
-        cost = new Mana(model.mana);
+        cost = model.mana; // immutable, shared by all cards of the model
         if (model.types.contains(CardModel.Type.LAND)) {
-            cost = new Mana("0");
+            cost = Mana.Cost.ZERO;
             flags.add(Flag.CAN_TAP);
             flags.add(Flag.CAN_UNTAP);
         } else if (model.types.contains(CardModel.Type.CREATURE)) {
@@ -96,7 +99,12 @@ public class Card {
     public void setPile(DeckModel.Pile pile) {this.pile = pile;}
 
     /**
-     * Returns mana cost of this card.  This cost is a new modifiable mana object
+     * @return player controlling this card, null if it wasn't cast
+     */
+    public Player getController() { return controller; }
+
+    /**
+     * Returns mana cost of this card. The cost is immutable and shared, copy it to modify it
      *
      * @return mana requirement for this card
      */
@@ -134,8 +142,8 @@ public class Card {
     public boolean tap() {
         if (flags.contains(Flag.IS_TAPPED) || !flags.contains(Flag.CAN_TAP)) return false;
         flags.add(Flag.IS_TAPPED);
-        if (model.types.contains(CardModel.Type.LAND))
-            controller.manaPool.addMana(model.mana);
+        if (model.types.contains(CardModel.Type.LAND)) // land that wasn't cast is controlled by it's owner
+            (controller != null ? controller : deck.owner).manaPool.addMana(model.mana);
         return true;
     }
 
@@ -0,0 +1,122 @@
+package me.tooster.MTG;
+
+import me.tooster.MTG.models.DeckModel;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Pile of cards in a deck, indexed from the top of the pile as 0 like {@link Deck#move(DeckModel.Pile, int,
+ * DeckModel.Pile, int)}.
+ * <p>
+ * Cards are kept in an array with the top of the pile at its end, so drawing, milling and putting cards on top don't
+ * shift the pile. Every card remembers its slot in the array, so finding it with {@link #indexOf(Object)} doesn't scan.
+ * Piles whose order doesn't matter, like the hand or the board, remove a card by putting the top card in its slot,
+ * which makes taking any card from them constant time too. Ordered piles, like the library or the graveyard, shift the
+ * cards above the removed one.
+ */
+public final class CardPile extends AbstractList<Card> implements RandomAccess {
+
+    private final DeckModel.Pile pile;
+    private final boolean        ordered;                 // order of cards must be kept when removing
+    private       Card[]         cards = new Card[16];    // bottom of the pile first
+    private       int            size  = 0;
+
+    /**
+     * @param pile    pile set on the cards put in this pile
+     * @param ordered true if removing a card must keep the order of the others
+     */
+    CardPile(DeckModel.Pile pile, boolean ordered) {
+        this.pile = pile;
+        this.ordered = ordered;
+    }
+
+    private void place(Card card, int slot) {
+        cards[slot] = card;
+        card.slot = slot;
+        card.pile = pile;
+    }
+
+    private void grow(int capacity) {
+        if (capacity > cards.length) cards = Arrays.copyOf(cards, Math.max(capacity, cards.length * 2));
+    }
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public Card get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        return cards[size - 1 - index];
+    }
+
+    @Override
+    public Card set(int index, Card card) {
+        Card replaced = get(index);
+        place(card, size - 1 - index);
+        return replaced;
+    }
+
+    @Override
+    public void add(int index, Card card) {
+        if (index < 0 || index > size) throw new IndexOutOfBoundsException(index);
+        grow(size + 1);
+        int slot = size - index;
+        System.arraycopy(cards, slot, cards, slot + 1, index); // shift cards above it, none for the top
+        for (int above = slot + 1; above <= size; above++) cards[above].slot = above;
+        place(card, slot);
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(@NotNull Collection<? extends Card> added) {
+        int count = added.size();
+        if (count == 0) return false;
+        grow(size + count);
+        System.arraycopy(cards, 0, cards, count, size); // make room at the bottom at once
+        for (int slot = count; slot < size + count; slot++) cards[slot].slot = slot;
+        int slot = count;
+        for (Card card : added) place(card, --slot);
+        size += count;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public Card remove(int index) {
+        Card removed = get(index);
+        int slot = size - 1 - index, top = size - 1;
+        if (ordered) {
+            System.arraycopy(cards, slot + 1, cards, slot, index);
+            for (int above = slot; above < top; above++) cards[above].slot = above;
+        } else if (slot != top) place(cards[top], slot);
+        cards[top] = null;
+        size--;
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Card)) return -1;
+        int slot = ((Card) o).slot;
+        return slot < size && cards[slot] == o ? size - 1 - slot : -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) { return indexOf(o); }
+
+    @Override
+    public boolean contains(Object o) { return indexOf(o) != -1; }
+
+    @Override
+    public void clear() {
+        Arrays.fill(cards, 0, size, null);
+        size = 0;
+        modCount++;
+    }
+}
@@ -16,7 +16,12 @@ public class Deck {
 
     public final DeckModel                      model; // model from YAML file
     public final Player                         owner;
-    public final EnumMap<Pile, ArrayList<Card>> piles;
+    public final EnumMap<Pile, CardPile>        piles;
+
+    // indexes for findCard, cards of a deck don't change after it's built
+    private       Card[]                        byID    = new Card[0]; // cards by ID - firstID, IDs are nearly sequential
+    private       int                           firstID = 0;
+    private final TreeMap<String, Card>         byLabel = new TreeMap<>(); // cards by name@ID, to find them by prefix
 
     //------------------------------------
 
@@ -31,7 +36,8 @@ public class Deck {
         this.model = model;
         this.owner = owner;
         piles = new EnumMap<>(Pile.class);
-        for (Pile pile : Pile.cachedValues) piles.put(pile, new ArrayList<>());
+        for (Pile pile : Pile.cachedValues) // only order of library and graveyard matters
+            piles.put(pile, new CardPile(pile, pile == Pile.LIBRARY || pile == Pile.GRAVEYARD));
     }
 
     /**
@@ -67,16 +73,14 @@ public class Deck {
             throw new DeckException("Source pile is empty");
         if (srcIdx < 0 || srcIdx >= piles.get(srcPile).size())
             throw new DeckException("Source index is invalid");
-        if (dstIdx < 0 || srcIdx > piles.get(dstPile).size())
+        if (dstIdx < 0 || dstIdx > piles.get(dstPile).size() - (srcPile == dstPile ? 1 : 0))
             throw new DeckException("Destination index is invalid");
 
-        Card c = piles.get(srcPile).remove(srcIdx);
-        piles.get(dstPile).add(dstIdx, c);
-        c.setPile(dstPile);
+        piles.get(dstPile).add(dstIdx, piles.get(srcPile).remove(srcIdx));
     }
 
     /**
-     * Moves specified card from one pile to other pile
+     * Moves specified card from one pile to the top of other pile
      * @param card card to move
      * @param srcPile source pile
      * @param dstPile destination pile
@@ -88,8 +92,7 @@ public class Deck {
         int idx = piles.get(srcPile).indexOf(card);
         if (idx != -1){
             piles.get(srcPile).remove(idx);
-            piles.get(dstPile).add(card);
-            card.setPile(dstPile);
+            piles.get(dstPile).add(0, card);
         } else throw new DeckException("Tried to move a card from a pile not containing it");
     }
 
@@ -109,33 +112,62 @@ public class Deck {
         // populate piles
         deck.piles.forEach((pile, cards) -> {
             deck.model.piles.get(pile).forEach(cardModel -> {
-                Card c = Card.build(IDGenerator, deck, cardModel);
-                cards.add(c);
-                c.setPile(pile);
+                cards.add(Card.build(IDGenerator, deck, cardModel));
             });
         });
 
+        deck.index();
         deck.reset();
         return deck;
     }
 
     /**
-     * @return Returns stream of cards from this deck, in no particular order.
+     * Builds the indexes of cards used by {@link #findCard(String)}.
      */
-    public Stream<Card> cardStream() {
-        Stream.Builder<Card> sb = Stream.builder();
-        piles.values().stream().flatMap(Collection::stream).forEach(sb::add);
-        return sb.build();
+    private void index() {
+        IntSummaryStatistics ids = cardStream().mapToInt(c -> c.ID).summaryStatistics();
+        if (ids.getCount() == 0) return;
+        firstID = ids.getMin();
+        byID = new Card[ids.getMax() - firstID + 1];
+        cardStream().forEach(c -> {
+            byID[c.ID - firstID] = c;
+            byLabel.put(c.toString(), c);
+        });
     }
 
+    /**
+     * @return Returns stream of cards from this deck, in no particular order.
+     */
+    public Stream<Card> cardStream() { return piles.values().stream().flatMap(Collection::stream); }
+
+    /**
+     * Finds the card by it's ID or by the prefix of it's name@ID label. Lookups use the indexes and don't allocate.
+     *
+     * @param identity ID of the card or prefix of it's label, like "Plains" or "Plains@1"
+     * @return card with the ID, otherwise the only card with label starting with the identity, null if none or many
+     */
     public Card findCard(String identity) {
-        Optional<Card> card = Optional.empty();
         //return by tag
-        try { card = cardStream().filter(c -> c.ID == Long.parseLong(identity)).findFirst(); } catch (NumberFormatException ignored) {}
-        if (card.isPresent()) return card.get();
-        // return by name
-        var matching = cardStream().filter(c -> c.toString().startsWith(identity)).toArray();
-        if (matching.length != 1) return null;
-        return (Card) matching[0];
+        int id = parseID(identity);
+        if (id >= firstID && id - firstID < byID.length && byID[id - firstID] != null) return byID[id - firstID];
+        // return by name, labels with the prefix are next to each other in order
+        Map.Entry<String, Card> match = byLabel.ceilingEntry(identity);
+        if (match == null || !match.getKey().startsWith(identity)) return null;
+        Map.Entry<String, Card> next = byLabel.higherEntry(match.getKey());
+        return next != null && next.getKey().startsWith(identity) ? null : match.getValue();
+    }
+
+    /**
+     * @return ID written in the identity, -1 if it isn't a number of at most 9 digits
+     */
+    private static int parseID(String identity) {
+        if (identity.isEmpty() || identity.length() > 9) return -1;
+        int id = 0;
+        for (int i = 0; i < identity.length(); i++) {
+            char c = identity.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            id = id * 10 + (c - '0');
+        }
+        return id;
     }
 }
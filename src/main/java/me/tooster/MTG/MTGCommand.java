@@ -32,7 +32,7 @@ public enum MTGCommand implements Command {
     @Alias({"/t", "/tap"}) @Help("/tap <cards...> taps the cards") TAP,
 //    @Alias({"/u", "/untap"}) @Help("/tap <cards...> utaps the cards") UNTAP,
 //    @Alias({"/dr", "/draw"}) DRAW,
-    @Alias({"/c", "/cast"}) @Help("/cast <card> to cast a card") CAST,
+    @Alias({"/c", "/cast"}) @Help("/cast <card> to cast a card, tapping lands for missing mana") CAST,
     ;
 
     public static final EnumSet<MTGCommand> commands = EnumSet.allOf(MTGCommand.class);
@@ -8,6 +8,7 @@ import me.tooster.MTG.models.CardModel;
 import me.tooster.MTG.models.DeckModel;
 import me.tooster.common.Command;
 import me.tooster.common.FiniteStateMachine;
+import me.tooster.common.TimerWheel;
 import me.tooster.common.Formatter;
 import me.tooster.server.Hub;
 import me.tooster.server.ResourceManager;
@@ -15,6 +16,8 @@ import me.tooster.server.Server;
 import me.tooster.server.User;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static me.tooster.MTG.MTGCommand.*;
@@ -29,12 +32,17 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
     private final Vector<Player>      playersOrder;
     private       int                 turnPlayerIdx;
     private       int                 priorityPlayerIdx;
+    private final int                 turnTimeLimit; // seconds a player has to act, 0 for no limit
+    private       TimerWheel.Timeout  turnTimeout;
+    private       State               turnTimeoutState; // state and player the turn timeout was set for
+    private       Player              turnTimeoutPlayer;
 
     public MTGStateMachine(Hub hub, int requiredReadyCount) {
         super(State.GAME_PREPARE);
         this.hub = hub;
         this.requiredReadyCount = requiredReadyCount;
         config = ResourceManager.instance().getConfig(); // TODO: validate and crash in start() if config structure is wrong
+        turnTimeLimit = ((Number) config.getOrDefault("turn_time_limit", 0)).intValue();
         playersData = new LinkedHashMap<>(requiredReadyCount);
         playersOrder = new Vector<>(requiredReadyCount);
     }
@@ -47,32 +55,83 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
      * @param user user that want's to join the game
      * @return returns true if user was added and processed as candidate for the game
      */
-    public synchronized boolean tryAddUser(User user) {
-        user.mtgCommandController.setEnabled(DECK_SELECT, DECK_LIST, DECK_SHOW);
-        user.mtgCommandController.setMasked(DECK_SELECT, DECK_LIST, DECK_SHOW);
-        if (getCurrentState() == MTGStateMachine.State.GAME_PREPARE) {
-            user.mtgCommandController.enable(READY);
+    public boolean tryAddUser(User user) {
+        lock.lock();
+        try {
+            boolean prepare = getCurrentState() == MTGStateMachine.State.GAME_PREPARE;
+            if (!commands(user, commands -> {
+                commands.setEnabled(DECK_SELECT, DECK_LIST, DECK_SHOW);
+                commands.setMasked(DECK_SELECT, DECK_LIST, DECK_SHOW);
+                if (prepare) commands.enable(READY);
+            })) return false; // user left the hub meanwhile
+            if (prepare) {
+                user.transmit(VisualMsg.newBuilder()
+                        .setFrom("HUB")
+                        .setTo(user.toString())
+                        .setMsg("Use '" + READY.mainAlias() + "' when ready."));
+                return true;
+            }
+
             user.transmit(VisualMsg.newBuilder()
-                    .setFrom("HUB")
-                    .setTo(user.toString())
-                    .setMsg("Use '" + READY.mainAlias() + "' when ready."));
-            return true;
+                    .setVariant(VisualMsg.Variant.INVALID)
+                    .setMsg("Game already in progress, wait for it to end or use '/leave' and '" + READY.mainAlias()
+                            + "' to find another match."));
+            return false;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        user.transmit(VisualMsg.newBuilder()
-                .setVariant(VisualMsg.Variant.INVALID)
-                .setMsg("Game already in progress, you have to wait for it to end."));
-        return false;
+    /**
+     * Removes user from game. If user was playing, he forfeits and the game is reset for the users remaining in the hub.
+     * Commands of the leaving user are set up by whatever he joins next.
+     *
+     * @param user user to remove, already removed from the hub's users
+     */
+    public void removeUser(User user) {
+        lock.lock();
+        try {
+            if (getCurrentState() == State.GAME_PREPARE) {
+                if (playersData.remove(user) != null)
+                    hub.broadcast("%s is not ready. Ready players: %s", user,
+                            Formatter.formatProgress(playersData.size(), requiredReadyCount));
+            } else if (playersData.containsKey(user)) {
+                hub.broadcast("%s forfeited the game.", user);
+                restart();
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Removes user from game, triggers forfeit on a game and resets his state
+     * Resets the game for users in the hub, so they can ready up for the next one.
+     */
+    private void restart() {
+        forceState(State.GAME_PREPARE);
+        hub.users.values().forEach(u -> {
+            commands(u, MTGStateMachine::resetCommands);
+            tryAddUser(u);
+        });
+    }
+
+    /**
+     * Disables and unmasks all game commands of the user
+     */
+    private static void resetCommands(Command.Controller<MTGCommand> commands) {
+        commands.setMasked();
+        commands.enabledCommands.clear();
+    }
+
+    /**
+     * Changes game commands of the user if he is still in this hub, see {@link User#changeCommands(Hub, Consumer)}.
      *
-     * @param user user to remove
+     * @param user   user whose commands change
+     * @param change change of the commands
+     * @return true if the commands were changed
      */
-    public synchronized void removeUser(User user) {
-        if (getCurrentState() == State.GAME_PREPARE) process(user.mtgCommandController.compile(FORFEIT));
-        user.mtgCommandController.disable(READY);
+    private boolean commands(User user, Consumer<Command.Controller<MTGCommand>> change) {
+        return user.changeCommands(hub, change);
     }
 
     /**
@@ -161,16 +220,122 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
         MTGStateMachine.transmitPile(pd.user, pd, DeckModel.Pile.HAND);
     }
 
+    /**
+     * Handles the deck commands available before the game, both in the hub and in the matchmaking lobby.
+     *
+     * @param command one of DECK_LIST, DECK_SHOW or DECK_SELECT compiled by user's controller
+     */
+    public static void processDeckCommand(Compiled<MTGCommand> command) {
+        User user = (User) command.controller.owner;
+        switch (command.cmd) {
+            case DECK_LIST: {
+                String[] decks = ResourceManager.instance().getLoadedDecks().toArray(new String[]{});
+                Arrays.sort(decks);
+                user.transmit(VisualMsg.newBuilder()
+                        .setVariant(VisualMsg.Variant.INFO)
+                        .setMsg("Decks:\n" + String.join("\n", decks)));
+                break;
+            }
+
+            case DECK_SHOW: {
+                try {
+                    String deckName = command.arg(1);
+                    deckName = deckName.isBlank() ? user.config.get("deck") : deckName;
+                    if (deckName.isBlank()) {
+                        user.transmit(VisualMsg.newBuilder()
+                                .setVariant(VisualMsg.Variant.INVALID)
+                                .setMsg("You have to specify deck's name."));
+                        return;
+                    }
+                    var cards = ResourceManager.instance().getDeckModel(deckName).piles.get(DeckModel.Pile.LIBRARY);
+                    Map<String, Long> amounts = cards.stream().collect(Collectors.groupingBy(cm -> cm.name, Collectors.counting()));
+                    String[] strings =
+                            amounts.entrySet().stream().map(e -> e.getKey() + " x" + e.getValue()).toArray(String[]::new);
+                    Arrays.sort(strings);
+                    user.transmit(VisualMsg.newBuilder()
+                            .setVariant(VisualMsg.Variant.INFO)
+                            .setMsg(String.format("Deck '%s':\n%s", deckName, Formatter.list(strings))));
+                } catch (DeckException e) {
+                    user.transmit(VisualMsg.newBuilder()
+                            .setVariant(VisualMsg.Variant.ERROR)
+                            .setMsg(e.getMessage()));
+                }
+                break;
+            }
+
+            case DECK_SELECT: {
+                try {
+                    String deckName = command.arg(2);
+
+                    if (deckName.isBlank()) {
+                        user.transmit(VisualMsg.newBuilder()
+                                .setVariant(VisualMsg.Variant.INVALID)
+                                .setMsg("You have to specify deck's name."));
+                        return;
+                    }
+                    user.config.put("deck", deckName); // safe deck name in user's config for future use
+                    user.transmit(VisualMsg.newBuilder()
+                            .setFrom("HUB")
+                            .setMsg("Selected deck: '" + deckName + "'"));
+
+                    if (!ResourceManager.instance().getLoadedDecks().contains(deckName))
+                        user.transmit(VisualMsg.newBuilder()
+                                .setVariant(VisualMsg.Variant.WARNING)
+                                .setMsg("Deck " + deckName + " hasn't been imported."));
+
+                } catch (DeckException e) {
+                    user.transmit(VisualMsg.newBuilder()
+                            .setVariant(VisualMsg.Variant.ERROR)
+                            .setMsg(e.getMessage()));
+                    Server.LOGGER.warning(e.getMessage());
+                } catch (CardException e) {
+                    Server.LOGGER.severe(e.getMessage());
+                }
+                break;
+            }
+        }
+    }
+
     @Override
-    public void prepcocess(MTGStateMachine fsm, Compiled<MTGCommand>... input) throws AbortTransition {
-        User user = (User) input[0].controller.owner;
-        var cmd = input[0].cmd;
+    public void prepcocess(MTGStateMachine fsm, List<Compiled<MTGCommand>> input) throws AbortTransition {
+        User user = (User) input.get(0).controller.owner;
+        var cmd = input.get(0).cmd;
         if (cmd == null) throw new AbortTransition();
-        if (user != null && !input[0].isEnabled()) throw new CommandDisabledException(cmd);
+        if (user != null && !input.get(0).isEnabled()) throw new CommandDisabledException(cmd);
         if (cmd == BOARD)
             fsm.transmitBoard(user);
     }
 
+    /**
+     * Restarts the game if it halted and restarts the turn timer if the player with priority or the state changed.
+     */
+    @Override
+    public void postprocess(MTGStateMachine fsm, List<Compiled<MTGCommand>> input) {
+        if (getCurrentState() == null) { // state halted the game
+            hub.broadcast("Game over.");
+            restart();
+        }
+
+        State state = getCurrentState();
+        Player player = state == null || playersOrder.isEmpty() ? null : getPriorityPlayer();
+        if (state == turnTimeoutState && player == turnTimeoutPlayer) return; // same turn
+
+        if (turnTimeout != null) turnTimeout.cancel();
+        turnTimeout = null;
+        turnTimeoutState = state;
+        turnTimeoutPlayer = player;
+        MTGCommand timeoutCommand = state == null ? null : state.timeoutCommand();
+        if (turnTimeLimit <= 0 || timeoutCommand == null || player == null) return;
+
+        turnTimeout = Server.TIMERS.schedule(() -> hub.execute(() -> { // processed in hub's mailbox like any command
+            if (getCurrentState() != state || getPriorityPlayer() != player) return; // player acted in time
+            var command = player.user.mtgCommandController.compile(timeoutCommand);
+            if (!command.isEnabled()) return;
+            hub.broadcast("%s ran out of time.", player);
+            process(command);
+        }), turnTimeLimit, TimeUnit.SECONDS);
+    }
+
     public enum State implements FiniteStateMachine.State<State, MTGStateMachine, Compiled<MTGCommand>> {
         GAME_PREPARE {
             @Override
@@ -181,76 +346,16 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
             }
 
             @Override
-            public State process(MTGStateMachine fsm, Compiled<MTGCommand>... input) {
-                var cmd = input[0].cmd;
-                User user = (User) input[0].controller.owner;
+            public State process(MTGStateMachine fsm, List<Compiled<MTGCommand>> input) {
+                var cmd = input.get(0).cmd;
+                User user = (User) input.get(0).controller.owner;
                 switch (cmd) {
 
-                    case DECK_LIST: {
-                        String[] decks = ResourceManager.instance().getLoadedDecks().toArray(new String[]{});
-                        Arrays.sort(decks);
-                        user.transmit(VisualMsg.newBuilder()
-                                .setVariant(VisualMsg.Variant.INFO)
-                                .setMsg("Decks:\n" + String.join("\n", decks)));
+                    case DECK_LIST:
+                    case DECK_SHOW:
+                    case DECK_SELECT:
+                        processDeckCommand(input.get(0));
                         break;
-                    }
-
-                    case DECK_SHOW: {
-                        try {
-                            String deckName = input[0].arg(1);
-                            deckName = deckName.isBlank() ? user.config.get("deck") : deckName;
-                            if (deckName.isBlank()) {
-                                user.transmit(VisualMsg.newBuilder()
-                                        .setVariant(VisualMsg.Variant.INVALID)
-                                        .setMsg("You have to specify deck's name."));
-                                return this;
-                            }
-                            var cards = ResourceManager.instance().getDeckModel(deckName).piles.get(DeckModel.Pile.LIBRARY);
-                            Map<String, Long> amounts = cards.stream().collect(Collectors.groupingBy(cm -> cm.name, Collectors.counting()));
-                            String[] strings =
-                                    amounts.entrySet().stream().map(e -> e.getKey() + " x" + e.getValue()).toArray(String[]::new);
-                            Arrays.sort(strings);
-                            user.transmit(VisualMsg.newBuilder()
-                                    .setVariant(VisualMsg.Variant.INFO)
-                                    .setMsg(String.format("Deck '%s':\n%s", deckName, Formatter.list(strings))));
-                        } catch (DeckException e) {
-                            user.transmit(VisualMsg.newBuilder()
-                                    .setVariant(VisualMsg.Variant.ERROR)
-                                    .setMsg(e.getMessage()));
-                        }
-                        break;
-                    }
-
-                    case DECK_SELECT: {
-                        try {
-                            String deckName = input[0].arg(2);
-
-                            if (deckName.isBlank()) {
-                                user.transmit(VisualMsg.newBuilder()
-                                        .setVariant(VisualMsg.Variant.INVALID)
-                                        .setMsg("You have to specify deck's name."));
-                                return this;
-                            }
-                            user.config.put("deck", deckName); // safe deck name in user's config for future use
-                            user.transmit(VisualMsg.newBuilder()
-                                    .setFrom("HUB")
-                                    .setMsg("Selected deck: '" + deckName + "'"));
-
-                            if (!ResourceManager.instance().getLoadedDecks().contains(deckName))
-                                user.transmit(VisualMsg.newBuilder()
-                                        .setVariant(VisualMsg.Variant.WARNING)
-                                        .setMsg("Deck " + deckName + " hasn't been imported."));
-
-                        } catch (DeckException e) {
-                            user.transmit(VisualMsg.newBuilder()
-                                    .setVariant(VisualMsg.Variant.ERROR)
-                                    .setMsg(e.getMessage()));
-                            Server.LOGGER.warning(e.getMessage());
-                        } catch (CardException e) {
-                            Server.LOGGER.severe(e.getMessage());
-                        }
-                        break;
-                    }
 
                     case READY: {
                         boolean wasReady;
@@ -290,13 +395,16 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
             public void onExit(MTGStateMachine fsm, State nextState) {
                 fsm.playersData.forEach((user, pd) -> {
                     fsm.playersOrder.add(pd);
-                    user.mtgCommandController.setEnabled(FORFEIT);
+                    fsm.commands(user, commands -> commands.setEnabled(FORFEIT));
                 });
 
             }
         }, // deck select etc.
 
         DRAW_HAND {
+            @Override
+            MTGCommand timeoutCommand() { return KEEP; }
+
             /**
              * Performs paris mulligan for player. It returns a hand to library, shuffles it and draws hand with one card less.
              * If number of cards in hand is 0, no further mulligans can take place
@@ -330,21 +438,21 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
             public void onEnter(MTGStateMachine fsm, State prevState) {
                 fsm.hub.broadcast("Game started. %s goes first", fsm.getPriorityPlayer());
                 fsm.playersData.values().forEach(pd -> drawHand(pd, (int) fsm.config.get("max_hand")));
-                fsm.getPriorityPlayer().user.mtgCommandController.enable(MULLIGAN, KEEP);
+                fsm.commands(fsm.getPriorityPlayer().user, commands -> commands.enable(MULLIGAN, KEEP));
                 prompt(fsm.getPriorityPlayer());
             }
 
             @Override
-            public State process(MTGStateMachine fsm, Compiled<MTGCommand>... input) { // right now it's paris mulligan
-                var cmd = input[0].cmd;
-                User user = (User) input[0].controller.owner;
+            public State process(MTGStateMachine fsm, List<Compiled<MTGCommand>> input) { // right now it's paris mulligan
+                var cmd = input.get(0).cmd;
+                User user = (User) input.get(0).controller.owner;
                 Player pd = fsm.playersData.get(user);
                 if (!pd.handChoosen)
                     fsm.hub.broadcast("%s decided to %s their hand.", user.toString(), cmd == KEEP ? "keep" : "mulligan");
                 if (cmd == KEEP) pd.handChoosen = true;
                 else pd.mulligansTaken++;
 
-                fsm.getPriorityPlayer().user.mtgCommandController.disable(MULLIGAN, KEEP);
+                fsm.commands(fsm.getPriorityPlayer().user, commands -> commands.disable(MULLIGAN, KEEP));
                 do {fsm.passPriority(null);}
                 while (fsm.getPriorityPlayer().handChoosen && fsm.getPriorityPlayer() != fsm.playersOrder.get(0));
 
@@ -354,7 +462,7 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
                 if (fsm.playersData.values().stream().allMatch(_pd -> _pd.handChoosen))
                     return MAIN_1;
 
-                fsm.getPriorityPlayer().user.mtgCommandController.enable(MULLIGAN, KEEP);
+                fsm.commands(fsm.getPriorityPlayer().user, commands -> commands.enable(MULLIGAN, KEEP));
                 fsm.hub.broadcast("%s choosing...", fsm.getPriorityPlayer());
                 prompt(fsm.getPriorityPlayer());
                 return this; // start game if hands picked
@@ -362,10 +470,10 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
 
             @Override
             public void onExit(MTGStateMachine fsm, MTGStateMachine.State nextState) {
-                fsm.playersOrder.forEach(pd -> {
-                    pd.user.mtgCommandController.setEnabled(BOARD);
-                    pd.user.mtgCommandController.mask(BOARD);
-                });
+                fsm.playersOrder.forEach(pd -> fsm.commands(pd.user, commands -> {
+                    commands.setEnabled(BOARD);
+                    commands.mask(BOARD);
+                }));
             }
         },
         // mulligansUsed phase
@@ -376,6 +484,9 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
 //        DRAW,
 
         MAIN_1 {
+            @Override
+            MTGCommand timeoutCommand() { return PASS_PRIORITY; }
+
             @Override
             public void onEnter(MTGStateMachine fsm, MTGStateMachine.State prevState) {
                 var pp = fsm.getPriorityPlayer();
@@ -383,25 +494,26 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
                 fsm.hub.broadcast("Main phase for begins %s", pp);
                 pp.deck.piles.get(DeckModel.Pile.BOARD).forEach(Card::untap);
                 drawHand(pp, 1);
-                pp.user.mtgCommandController.enable(CAST, TAP, MANA_CONVERT, PASS_PRIORITY);
+                fsm.commands(pp.user, commands -> commands.enable(CAST, TAP, MANA_CONVERT, PASS_PRIORITY));
                 pp.user.transmit(VisualMsg.newBuilder()
                         .setVariant(VisualMsg.Variant.PROMPT)
-                        .setMsg("You can " + CAST + " a card if you have mana and " + TAP + " a land to gain mana"));
+                        .setMsg("You can " + CAST + " a card, your lands are tapped for the missing mana, or " + TAP
+                                + " a land to gain mana"));
             }
 
             @Override
-            public MTGStateMachine.State process(MTGStateMachine fsm, Compiled<MTGCommand>... input) {
-                var command = input[0];
+            public MTGStateMachine.State process(MTGStateMachine fsm, List<Compiled<MTGCommand>> input) {
+                var command = input.get(0);
                 User user = (User) command.controller.owner;
                 Player pd = fsm.playersData.get(user);
                 if (command.cmd == MANA_CONVERT) {
-                    if (command.args.length < 2) {
+                    if (command.argCount() < 2) {
                         user.transmit(VisualMsg.newBuilder()
                                 .setVariant(VisualMsg.Variant.INVALID).setMsg("You have to specify mana to convert"));
                         return this;
                     }
                     try {
-                        pd.manaPool.convertToGeneric(new Mana(command.arg(2)));
+                        pd.manaPool.convertToGeneric(Mana.Cost.of(command.arg(2)));
                         fsm.hub.broadcast("%s converted %s mana to generic", pd, command.arg(1));
                     } catch (ManaFormatException e) {
                         user.transmit(VisualMsg.newBuilder().setVariant(VisualMsg.Variant.ERROR).setMsg("Invalid mana format"));
@@ -409,13 +521,13 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
                     }
 
                 } else if (command.cmd == CAST || command.cmd == TAP) {
-                    if (command.args.length < 2) {
+                    if (command.argCount() < 2) {
                         user.transmit(VisualMsg.newBuilder()
                                 .setVariant(VisualMsg.Variant.INVALID)
                                 .setMsg("You have to specify cards."));
                         return this;
                     }
-                    for (int i = 1; i < command.args.length; i++) {
+                    for (int i = 1; i < command.argCount(); i++) {
 
 
                         String cardName = command.arg(i);
@@ -433,8 +545,11 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
                             else
                                 fsm.hub.broadcast("%s tapped %s", user, card);
 
-                        } else { // cmd == CAST
+                        } else { // cmd == CAST, untapped lands are tapped for the mana missing in the pool
                             try {
+                                if (card.getController() == null)
+                                    for (Card land : ManaSolver.provide(pd, card.getCost()))
+                                        fsm.hub.broadcast("%s tapped %s", user, land);
                                 if (!card.cast(pd))
                                     user.transmit(VisualMsg.newBuilder()
                                             .setVariant(VisualMsg.Variant.INVALID)
@@ -444,7 +559,7 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
                             } catch (InsufficientManaException e) {
                                 user.transmit(VisualMsg.newBuilder()
                                         .setVariant(VisualMsg.Variant.INVALID)
-                                        .setMsg("You don't have enough mana. use " + MANA_CONVERT + " to convert mana to generic mana."));
+                                        .setMsg("You don't have enough mana or untapped lands to cast " + card));
                             }
                         }
                     }
@@ -454,33 +569,35 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
                     return COMBAT_ATTACKERS;
 
 
-                Server.LOGGER.warning("unhandled input in " + this + ": " + input[0]);
+                Server.LOGGER.warning("unhandled input in " + this + ": " + input.get(0));
                 return this;
             }
 
             @Override
             public void onExit(MTGStateMachine fsm, State nextState) {
-                var cc = fsm.getPriorityPlayer().user.mtgCommandController;
-                cc.setEnabled();
+                fsm.commands(fsm.getPriorityPlayer().user, commands -> commands.setEnabled());
             }
         },
 
         //        COMBAT_BEGIN,
         COMBAT_ATTACKERS {
+            @Override
+            MTGCommand timeoutCommand() { return PASS_PRIORITY; }
+
             @Override
             public void onEnter(MTGStateMachine fsm, State prevState) throws AbortTransition {
-                fsm.getPriorityPlayer().user.mtgCommandController.setEnabled(SELECT, PASS_PRIORITY);
+                fsm.commands(fsm.getPriorityPlayer().user, commands -> commands.setEnabled(SELECT, PASS_PRIORITY));
                 fsm.getPriorityPlayer().user.transmit(VisualMsg.newBuilder()
                         .setVariant(VisualMsg.Variant.PROMPT)
                         .setMsg("Select attackers"));
             }
 
             @Override
-            public State process(MTGStateMachine fsm, Compiled<MTGCommand>... input) {
-                var command = input[0];
+            public State process(MTGStateMachine fsm, List<Compiled<MTGCommand>> input) {
+                var command = input.get(0);
                 var pd = fsm.playersData.get((User) command.controller.owner);
                 if (command.cmd == SELECT) {
-                    if (command.args.length < 2) {
+                    if (command.argCount() < 2) {
                         pd.user.transmit(VisualMsg.newBuilder()
                                 .setVariant(VisualMsg.Variant.INVALID)
                                 .setMsg("You have to specify a card."));
@@ -501,26 +618,29 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
 
             @Override
             public void onExit(MTGStateMachine fsm, State nextState) throws AbortTransition {
-                fsm.getPriorityPlayer().user.mtgCommandController.setEnabled();
+                fsm.commands(fsm.getPriorityPlayer().user, commands -> commands.setEnabled());
                 fsm.passPriority("Declare defenders");
             }
         },
 
         COMBAT_DEFENDERS {
+            @Override
+            MTGCommand timeoutCommand() { return PASS_PRIORITY; }
+
             @Override
             public void onEnter(MTGStateMachine fsm, State prevState) throws AbortTransition {
-                fsm.getPriorityPlayer().user.mtgCommandController.setEnabled(SELECT, PASS_PRIORITY);
+                fsm.commands(fsm.getPriorityPlayer().user, commands -> commands.setEnabled(SELECT, PASS_PRIORITY));
                 fsm.getPriorityPlayer().user.transmit(VisualMsg.newBuilder()
                         .setVariant(VisualMsg.Variant.PROMPT)
                         .setMsg("Select defenders"));
             }
 
             @Override
-            public State process(MTGStateMachine fsm, Compiled<MTGCommand>... input) {
-                var command = input[0];
+            public State process(MTGStateMachine fsm, List<Compiled<MTGCommand>> input) {
+                var command = input.get(0);
                 var pd = fsm.playersData.get((User) command.controller.owner);
                 if (command.cmd == SELECT) {
-                    if (command.args.length < 3) {
+                    if (command.argCount() < 3) {
                         pd.user.transmit(VisualMsg.newBuilder()
                                 .setVariant(VisualMsg.Variant.INVALID)
                                 .setMsg("You have to specify a card and what it defends."));
@@ -556,5 +676,10 @@ public class MTGStateMachine extends FiniteStateMachine<MTGStateMachine.State, M
 //        END_STEP,
 //        CLEANUP_STEP
         ;
+
+        /**
+         * @return command issued for the player with priority when he runs out of time, null if the state isn't timed
+         */
+        MTGCommand timeoutCommand() { return null; }
     }
 }
@@ -4,14 +4,18 @@ import me.tooster.MTG.exceptions.InsufficientManaException;
 import me.tooster.MTG.exceptions.ManaFormatException;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.EnumSet;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Class representing mana poll/mana cost
+ * <p>
+ * Amounts are kept in an int array indexed by {@link Color#ordinal()}, so arithmetic on the pool doesn't box. Bit
+ * mask of colors that were ever set keeps the text format and color identity the same as when the pool was a map
+ * with the colors as keys. {@link Cost} is the immutable variant that can be shared, like costs of card models.
  */
 public class Mana {
     public enum Color {
@@ -50,7 +54,15 @@ public class Mana {
         }
     }
 
-    private EnumMap<Color, Integer> pool = new EnumMap<>(Color.class); // color mana will be >0, colorless mana... ?...
+    private static final Color[] VALUES      = Color.values();
+    private static final int     COLORS      = VALUES.length;
+    private static final int     GENERIC     = Color.GENERIC.ordinal();
+    private static final int     GENERIC_X   = Color.GENERIC_X.ordinal();
+    private static final int     COLLECTIBLE = (1 << Color.COLORLESS.ordinal() + 1) - 1; // mask of WUBRGC
+    private static final int     NOT_X       = ~(1 << GENERIC_X);
+
+    private final int[] pool    = new int[COLORS]; // amount of mana by color ordinal
+    private       int   present = 0;               // bit mask of colors set in the pool, even if to 0
 
     /**
      * See {@link me.tooster.MTG.Mana#Mana(String)}.
@@ -62,7 +74,8 @@ public class Mana {
      * @param mana mana to clone
      */
     public Mana(Mana mana) {
-        pool = new EnumMap<>(mana.pool); // I hope it works as intended and doesn't use boxed primitives
+        System.arraycopy(mana.pool, 0, pool, 0, COLORS);
+        present = mana.present;
     }
 
     /**
@@ -79,47 +92,65 @@ public class Mana {
      */
     public Mana(@NotNull String mana) throws ManaFormatException {
         if (mana.equals("0")) return;
+        if (mana.isEmpty()) throw new ManaFormatException(mana);
 
-        Pattern manaRegex = Pattern.compile("[\\dWUBRGCX]+");
-        Matcher manaMatcher = manaRegex.matcher(mana);
-        if (!manaMatcher.matches()) throw new ManaFormatException(mana);
-
-        // find numbers in mana format
-        Pattern genericRegex = Pattern.compile("\\d+");
-        Matcher numberMatcher = genericRegex.matcher(mana);
-        int genericCost = 0;
-        while (numberMatcher.find()) genericCost += Integer.parseInt(numberMatcher.group());
-
-        pool.put(Color.GENERIC, genericCost);
-
+        // single pass: numbers add up to generic mana, symbols count the mana of their color
+        int genericCost = 0, number = 0;
         for (int i = 0; i < mana.length(); i++) {
-            Color color = Color.fromCode(mana.charAt(i));
-            if (color != null) pool.put(color, pool.getOrDefault(color, 0) + 1);
+            char c = mana.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (number > (Integer.MAX_VALUE - (c - '0')) / 10) throw new ManaFormatException(mana);
+                number = number * 10 + (c - '0');
+                continue;
+            }
+            int color = c == '#' ? -1 : Color.symbols.indexOf(c); // '#' is only a placeholder for the number
+            if (color < 0) throw new ManaFormatException(mana);
+            set(color, pool[color] + 1);
+            if ((genericCost += number) < 0) throw new ManaFormatException(mana);
+            number = 0;
         }
+        if ((genericCost += number) < 0) throw new ManaFormatException(mana);
+        set(GENERIC, genericCost);
+    }
+
+    private void set(int color, int amount) {
+        pool[color] = amount;
+        present |= 1 << color;
     }
 
+    private boolean has(int color) { return (present & 1 << color) != 0; }
+
+    /**
+     * @param color color of the mana
+     * @return amount of the mana in the pool, 0 if not set
+     */
+    int amount(Color color) { return pool[color.ordinal()]; }
+
     /**
      * @return Returns representation of mana object with standard symbols: W, U, B, R, G, C, &lt;integer&gt;
      */
     @Override
     public String toString() {
         StringBuilder s = new StringBuilder();
-        for (Color mana : pool.keySet())
-            if (mana != Color.GENERIC) for (int n = pool.get(mana); n > 0; n--)
-                s.append(mana.symbol());
+        for (int color = 0; color < COLORS; color++)
+            if (color != GENERIC && has(color)) for (int n = pool[color]; n > 0; n--)
+                s.append(VALUES[color].symbol());
 
-        if (pool.containsKey(Color.GENERIC)) s.append(pool.get(Color.GENERIC));
+        if (has(GENERIC)) s.append(pool[GENERIC]);
 
-        if (pool.containsKey(Color.GENERIC_X)) s.append("[X=").append(getX()).append("]");
+        if (has(GENERIC_X)) s.append("[X=").append(getX()).append("]");
 
         return s.toString();
     }
 
     /**
-     * Returns the mana pool representing stored/required mana
+     * Returns the mana pool representing stored/required mana. The map is a copy, changing it doesn't change the pool.
      */
     public final EnumMap<Color, Integer> getPool() {
-        return pool;
+        EnumMap<Color, Integer> map = new EnumMap<>(Color.class);
+        for (int color = 0; color < COLORS; color++)
+            if (has(color)) map.put(VALUES[color], pool[color]);
+        return map;
     }
 
     /**
@@ -128,8 +159,9 @@ public class Mana {
      * @param pool
      */
     public void setPool(Mana pool) {
-        for (Color mana : pool.getPool().keySet())
-            this.pool.put(mana, pool.getPool().get(mana));
+        for (int color = 0; color < COLORS; color++)
+            if (pool.has(color)) this.pool[color] = pool.pool[color];
+        present |= pool.present;
     }
 
     /**
@@ -138,7 +170,7 @@ public class Mana {
      * Defaults to 0.
      */
     public int getX() {
-        return pool.getOrDefault(Color.GENERIC_X, 0);
+        return pool[GENERIC_X];
     }
 
     /**
@@ -147,7 +179,7 @@ public class Mana {
      * @param X new X value
      */
     public void setX(int X) {
-        pool.put(Color.GENERIC_X, X);
+        set(GENERIC_X, X);
     }
 
     /**
@@ -157,8 +189,8 @@ public class Mana {
      */
     public EnumSet<Color> getColorIdentity() {
         EnumSet<Color> colors = EnumSet.noneOf(Color.class);
-        for (Color mana : pool.keySet())
-            if (mana.isColored()) colors.add(mana);
+        for (int color = 0; color < COLORS; color++)
+            if (has(color) && VALUES[color].isColored()) colors.add(VALUES[color]);
 
         if (colors.size() == 0) colors.add(Color.COLORLESS);
 
@@ -169,9 +201,9 @@ public class Mana {
      * @param extraMana mana to add. GENERIC_X mana is ignored.
      */
     public void addMana(Mana extraMana) {
-        for (Color mana : extraMana.getPool().keySet())
-            if (mana != Color.GENERIC_X)
-                pool.put(mana, extraMana.getPool().get(mana) + pool.getOrDefault(mana, 0));
+        for (int color = 0; color < COLORS; color++)
+            if (color != GENERIC_X) pool[color] += extraMana.pool[color];
+        present |= extraMana.present & NOT_X;
     }
 
     /**
@@ -184,16 +216,17 @@ public class Mana {
         if (!this.satisfies(choosenMana))
             throw new InsufficientManaException(this, choosenMana);
 
-        for (Color color : choosenMana.getPool().keySet())
-            if (color != Color.GENERIC_X)
-                pool.put(color, pool.getOrDefault(color, 0) - choosenMana.getPool().get(color));
+        for (int color = 0; color < COLORS; color++)
+            if (color != GENERIC_X) pool[color] -= choosenMana.pool[color];
+        present |= choosenMana.present & NOT_X;
     }
 
     /**
      * Clears the mana pool setting 0 for each mana type.
      */
     public void flushMana() {
-        pool.clear();
+        Arrays.fill(pool, 0);
+        present = 0;
     }
 
     /**
@@ -209,12 +242,15 @@ public class Mana {
         if (!this.satisfies(choosenMana))
             throw new InsufficientManaException(this, choosenMana);
 
-        for (Color mana : choosenMana.getPool().keySet()) {
-            if (mana != Color.GENERIC_X && mana != Color.GENERIC) {
-                pool.put(mana, pool.get(mana) - choosenMana.getPool().get(mana));
-                pool.put(Color.GENERIC, pool.getOrDefault(Color.GENERIC, 0) + choosenMana.getPool().get(mana));
+        int converted = choosenMana.present & COLLECTIBLE;
+        if (converted == 0) return this;
+        for (int color = 0; color < COLORS; color++) {
+            if ((converted & 1 << color) != 0) {
+                pool[color] -= choosenMana.pool[color];
+                pool[GENERIC] += choosenMana.pool[color];
             }
         }
+        present |= converted | 1 << GENERIC;
         return this;
     }
 
@@ -233,18 +269,12 @@ public class Mana {
             throw new InsufficientManaException(this, requiredMana);
 
         // subtract collectible and generic cost
-        for (Color mana : requiredMana.getPool().keySet())
-            if (mana != Color.GENERIC_X)
-                pool.put(mana, pool.get(mana) - requiredMana.getPool().get(mana));
+        for (int color = 0; color < COLORS; color++)
+            if (color != GENERIC_X) pool[color] -= requiredMana.pool[color];
+        present |= requiredMana.present & NOT_X;
 
         // subtract variable(X) cost
-        if (requiredMana.getPool().containsKey(Color.GENERIC_X))
-            pool.put(Color.GENERIC,
-                    pool.getOrDefault(Color.GENERIC, 0)
-                            - pool.getOrDefault(Color.GENERIC_X, 0)
-                            * requiredMana.getPool().getOrDefault(Color.GENERIC_X, 0));
-
-
+        if (requiredMana.has(GENERIC_X)) set(GENERIC, pool[GENERIC] - pool[GENERIC_X] * requiredMana.pool[GENERIC_X]);
     }
 
     /**
@@ -261,20 +291,85 @@ public class Mana {
     public boolean satisfies(Mana requiredMana) {
 
         // check colored+colorless mana, count spare mana to spend
-        for (Color mana : requiredMana.getPool().keySet()) {
-            if (mana.isCollectible()) {
-                if (requiredMana.getPool().getOrDefault(mana, 0) >
-                        pool.getOrDefault(mana, 0))
-                    return false;
-            }
+        for (int color = 0; color < GENERIC_X; color++) // collectible colors come first
+            if (requiredMana.pool[color] > pool[color])
+                return false;
+
+        // counts generic and variable mana; variable mana also must be converted to generic in pool beforehand
+        return pool[GENERIC] >= requiredMana.pool[GENERIC] + requiredMana.pool[GENERIC_X] * pool[GENERIC_X];
+    }
 
+    /**
+     * Immutable mana cost, which can be shared between cards and threads. Operations changing the mana throw
+     * {@link UnsupportedOperationException}, copy the cost with {@link Mana#Mana(Mana)} to get a modifiable one.
+     * <p>
+     * {@link #of(String)} interns the costs, so every card model and command with the same cost format gets the
+     * same instance and the format is parsed once.
+     */
+    public static final class Cost extends Mana {
+
+        /** maximum number of interned cost formats, set with -Dmtg.mana.internCapacity */
+        static final int INTERN_CAPACITY = Integer.getInteger("mtg.mana.internCapacity", 4096);
+
+        /** cost of 0 mana */
+        public static final Cost ZERO = new Cost(new Mana());
+
+        // bounded, so formats typed by users can't grow it forever, formats over the capacity are parsed every time
+        private static final Map<String, Cost> INTERNED = new ConcurrentHashMap<>();
+
+        /**
+         * Returns the interned cost of the format, parsing it on first use.
+         *
+         * @param mana mana format, see {@link Mana#Mana(String)}
+         * @return shared cost of the format
+         * @throws ManaFormatException if format is invalid
+         */
+        public static @NotNull Cost of(@NotNull String mana) throws ManaFormatException {
+            Cost cost = INTERNED.get(mana);
+            if (cost == null) {
+                cost = new Cost(mana); // invalid formats throw and aren't interned
+                if (INTERNED.size() < INTERN_CAPACITY) {
+                    Cost interned = INTERNED.putIfAbsent(mana, cost);
+                    if (interned != null) cost = interned;
+                }
+            }
+            return cost;
         }
 
-        // counts generic and variable mana; variable mana also must be converted to generic in pool beforehand
-        return (pool.getOrDefault(Color.GENERIC, 0) >=
-                requiredMana.getPool().getOrDefault(Color.GENERIC, 0)
-                        + requiredMana.getPool().getOrDefault(Color.GENERIC_X, 0)
-                        * pool.getOrDefault(Color.GENERIC_X, 0));
+        /**
+         * @param mana mana format, see {@link Mana#Mana(String)}
+         * @throws ManaFormatException if format is invalid
+         */
+        public Cost(@NotNull String mana) throws ManaFormatException { super(mana); }
+
+        /**
+         * @param mana mana to copy
+         */
+        public Cost(Mana mana) { super(mana); }
+
+        @Override
+        public void setPool(Mana pool) { throw immutable(); }
 
+        @Override
+        public void setX(int X) { throw immutable(); }
+
+        @Override
+        public void addMana(Mana extraMana) { throw immutable(); }
+
+        @Override
+        public void removeMana(Mana choosenMana) { throw immutable(); }
+
+        @Override
+        public void flushMana() { throw immutable(); }
+
+        @Override
+        public Mana convertToGeneric(Mana choosenMana) { throw immutable(); }
+
+        @Override
+        public void payFor(Mana requiredMana) { throw immutable(); }
+
+        private static UnsupportedOperationException immutable() {
+            return new UnsupportedOperationException("Mana cost is immutable");
+        }
     }
 }
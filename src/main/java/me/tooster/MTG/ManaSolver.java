@@ -0,0 +1,287 @@
+package me.tooster.MTG;
+
+import me.tooster.MTG.exceptions.InsufficientManaException;
+import me.tooster.MTG.models.CardModel;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Pays mana costs automatically: finds which untapped lands of the player to tap for the mana missing in his pool
+ * and which colored mana to spend as generic mana, which otherwise takes a {@link MTGCommand#TAP} and
+ * {@link MTGCommand#MANA_CONVERT} before every {@link MTGCommand#CAST}.
+ * <p>
+ * The pool pays for the cost when it has the mana of each color the cost asks for and its spare colored mana with
+ * generic mana covers the generic cost, so what is missing fits in 7 numbers: mana missing of each collectible color
+ * and generic mana missing. Lands producing the same mana are grouped and a dynamic program over the groups computes,
+ * for every state of the missing mana, how many lands of the group to tap. It taps the fewest lands, then empties the
+ * fewest kinds of lands, then leaves the kinds most evenly spread, to keep the most spells castable later.
+ * <p>
+ * The table has a state for every amount missing up to the initial one, so the work grows with the product of the
+ * missing amounts and the number of lands, and not with the number of ways to tap the lands: paying 12WWUUBBRRGGCC
+ * from a hundred lands of twenty kinds goes through under ten thousand states and takes under ten milliseconds.
+ * Costs whose table would take more than {@link #LIMIT} steps, or boards so big that the values of tappings don't fit
+ * in a long, are paid greedily instead, one most useful land at a time, which takes time linear in the number of lands
+ * but may tap more of them than needed, so the limit bounds the time a cast holds the hub.
+ */
+final class ManaSolver {
+
+    /** maximum number of steps of the dynamic program before paying greedily, set with -Dmtg.mana.solverLimit */
+    static final int LIMIT = Integer.getInteger("mtg.mana.solverLimit", 1 << 21);
+
+    private static final Mana.Color[] VALUES      = Mana.Color.values();
+    private static final int          COLLECTIBLE = Mana.Color.COLORLESS.ordinal() + 1; // WUBRGC come first
+    private static final int          GENERIC     = COLLECTIBLE;                        // generic mana in the arrays
+    private static final long         INFINITY    = Long.MAX_VALUE;
+
+    private final int[]            cost    = new int[GENERIC + 1]; // required colored mana and generic mana with X
+    private final int[]            missing = new int[GENERIC + 1]; // mana missing in the pool, generic last
+    private final int[]            radix   = new int[GENERIC + 1]; // number of values of each missing amount
+    private final int[]            weight  = new int[GENERIC + 1]; // weight of each missing amount in the state
+    private final List<List<Card>> lands;                          // untapped lands grouped by mana they produce
+    private final int[][]          produces;                       // mana produced by a land of each group
+    private final int[][]          colors;                         // colors produced by a land of each group
+    private final int[]            tapped;                         // lands to tap in each group
+    private       short[][]        amounts;                        // missing amounts by state, null if always 0
+    private       long             emptiedWeight, tappedWeight;    // weights of the fields of values, see value()
+
+    private ManaSolver(Mana pool, Mana required, Collection<List<Card>> groups) {
+        int spare = pool.amount(Mana.Color.GENERIC); // generic and spare colored mana of the pool
+        for (int color = 0; color < COLLECTIBLE; color++) {
+            cost[color] = required.amount(VALUES[color]);
+            missing[color] = Math.max(0, cost[color] - pool.amount(VALUES[color]));
+            spare += Math.max(0, pool.amount(VALUES[color]) - cost[color]);
+        }
+        cost[GENERIC] = required.amount(Mana.Color.GENERIC) + required.amount(Mana.Color.GENERIC_X) * pool.getX();
+        missing[GENERIC] = Math.max(0, cost[GENERIC] - spare);
+
+        lands = new ArrayList<>(groups);
+        produces = new int[lands.size()][GENERIC + 1];
+        colors = new int[lands.size()][];
+        tapped = new int[lands.size()];
+        for (int i = 0; i < lands.size(); i++) {
+            Mana mana = lands.get(i).get(0).model.mana;
+            produces[i][GENERIC] = mana.amount(Mana.Color.GENERIC);
+            for (int color = 0; color < COLLECTIBLE; color++)
+                produces[i][color] = mana.amount(VALUES[color]);
+            int[] produced = produces[i];
+            colors[i] = IntStream.range(0, COLLECTIBLE).filter(c -> produced[c] > 0).toArray();
+        }
+    }
+
+    /**
+     * Makes the player's mana pool pay for the cost: taps the fewest of his untapped lands that produce the missing
+     * mana and converts the colored mana needed for the generic cost. Nothing is tapped or converted if the pool
+     * already pays for the cost or if even all the lands can't.
+     *
+     * @param player   player paying the cost
+     * @param required cost to pay
+     * @return lands tapped to pay the cost, empty if the pool had enough mana
+     * @throws InsufficientManaException if the pool and the untapped lands can't pay the cost
+     */
+    static List<Card> provide(Player player, Mana required) throws InsufficientManaException {
+        if (player.manaPool.satisfies(required)) return List.of();
+
+        // group lands by the mana they produce, ordered by ID so the same board taps the same lands
+        Map<String, List<Card>> groups = new LinkedHashMap<>();
+        player.controlledCards.stream()
+                .filter(card -> card.model.types.contains(CardModel.Type.LAND)
+                        && card.flags.contains(Card.Flag.CAN_TAP) && !card.flags.contains(Card.Flag.IS_TAPPED)
+                        && !Mana.Cost.ZERO.satisfies(card.model.mana)) // lands producing nothing can't help
+                .sorted(Comparator.comparingInt(card -> card.ID))
+                .forEach(card -> groups.computeIfAbsent(card.model.mana.toString(), m -> new ArrayList<>()).add(card));
+
+        ManaSolver solver = new ManaSolver(player.manaPool, required, groups.values());
+        if (!solver.solve()) throw new InsufficientManaException(player.manaPool, required);
+
+        List<Card> tapped = new ArrayList<>();
+        for (int i = 0; i < solver.lands.size(); i++)
+            for (Card land : solver.lands.get(i).subList(0, solver.tapped[i]))
+                if (land.tap()) tapped.add(land);
+
+        player.manaPool.convertToGeneric(solver.conversion(player.manaPool));
+        return tapped;
+    }
+
+    /**
+     * @return true if the cost can be paid, then {@link #tapped} holds the lands to tap
+     */
+    private boolean solve() {
+        int[] left = missing.clone();
+        for (int i = 0; i < lands.size(); i++) lower(left, i, lands.get(i).size());
+        if (Arrays.stream(left).anyMatch(amount -> amount > 0)) return false; // even all the lands don't pay
+
+        long states = 1, steps = 0, mostLands = 0; // every useful land lowers some missing amount
+        for (int j = 0; j <= GENERIC && states <= LIMIT; j++) {
+            radix[j] = missing[j] + 1;
+            weight[j] = (int) states;
+            states *= radix[j];
+            mostLands += missing[j];
+        }
+        if (states <= LIMIT && mostLands < Short.MAX_VALUE && weighValues())
+            for (List<Card> group : lands) steps += states * (Math.min(group.size(), mostLands) + 1);
+
+        if (steps == 0 || steps > LIMIT) greedy();
+        else program((int) states);
+        return true;
+    }
+
+    /**
+     * Sets the weights of the fields of {@link #value(int, int)}. Each field gets a weight above the largest sum of
+     * the fields below it over all the groups, so the sums of values never carry from one field to the next.
+     *
+     * @return false if the values of this board don't fit in a long
+     */
+    private boolean weighValues() {
+        long spreads = 0, landCount = 0; // largest sum of the spreads and of lands tapped
+        for (List<Card> group : lands) {
+            spreads += (long) group.size() * group.size();
+            landCount += group.size();
+        }
+        emptiedWeight = spreads + 1;
+        if (emptiedWeight > (Long.MAX_VALUE - 1) / (lands.size() + 1)) return false;
+        tappedWeight = emptiedWeight * (lands.size() + 1);
+        return tappedWeight <= (Long.MAX_VALUE - 1) / (landCount + 1); // INFINITY stays above any value
+    }
+
+    /**
+     * Computes the best tapping backwards from the last group: the value of a state before group i is the value of
+     * the best tapping of groups from i on that leaves nothing missing, compared by lands tapped, then kinds emptied,
+     * then the spread of the untapped lands, weighted into a long so the values of groups add up.
+     */
+    private void program(int states) {
+        int groups = lands.size();
+        short[][] choice = new short[groups][states];
+        long[] next = new long[states], current = new long[states];
+        amounts = new short[GENERIC + 1][]; // missing amounts of the states, so steps don't divide
+        for (int j = 0; j <= GENERIC; j++) {
+            if (radix[j] == 1) continue;
+            amounts[j] = new short[states];
+            for (int state = 0; state < states; state++) amounts[j][state] = (short) (state / weight[j] % radix[j]);
+        }
+        Arrays.fill(next, INFINITY);
+        next[0] = 0; // after the last group, only the state with nothing missing is paid
+
+        for (int i = groups - 1; i >= 0; i--) {
+            int size = lands.get(i).size();
+            for (int state = 0; state < states; state++) {
+                long best = INFINITY;
+                for (int n = 0, previous = -1; n <= size; n++) {
+                    int after = step(state, i, n);
+                    if (after == previous) break; // the land wouldn't lower anything missing
+                    previous = after;
+                    if (next[after] == INFINITY) continue;
+                    long value = next[after] + value(size, n);
+                    if (value < best) {
+                        best = value;
+                        choice[i][state] = (short) n;
+                    }
+                }
+                current[state] = best;
+            }
+            long[] swap = next;
+            next = current;
+            current = swap;
+        }
+
+        int state = 0;
+        for (int j = 0; j <= GENERIC; j++) state += missing[j] * weight[j];
+        for (int i = 0; i < groups; i++) {
+            tapped[i] = choice[i][state];
+            state = step(state, i, tapped[i]);
+        }
+    }
+
+    /**
+     * Taps one land at a time, the one lowering the missing colored mana most, then the missing generic mana, from
+     * the group with most untapped lands. Used for costs too big for {@link #program(int)}.
+     */
+    private void greedy() {
+        int[] left = missing.clone(), after = new int[GENERIC + 1];
+        while (Arrays.stream(left).anyMatch(amount -> amount > 0)) {
+            int best = -1;
+            long bestGain = 0;
+            for (int i = 0; i < lands.size(); i++) {
+                if (tapped[i] == lands.get(i).size()) continue;
+                System.arraycopy(left, 0, after, 0, GENERIC + 1);
+                lower(after, i, 1);
+                long gain = left[GENERIC] - after[GENERIC];
+                for (int color = 0; color < COLLECTIBLE; color++) gain += (long) (left[color] - after[color]) << 32;
+                if (gain > bestGain || gain == bestGain && best != -1
+                        && lands.get(i).size() - tapped[i] > lands.get(best).size() - tapped[best]) {
+                    best = i;
+                    bestGain = gain;
+                }
+            }
+            tapped[best]++;
+            lower(left, best, 1);
+        }
+    }
+
+    /**
+     * Lowers the missing amounts by the mana of n lands of group i. Colored mana pays for its color first, the rest
+     * of it pays for generic mana.
+     */
+    private void lower(int[] amounts, int i, int n) {
+        long excess = (long) produces[i][GENERIC] * n;
+        for (int color : colors[i]) {
+            long produced = (long) produces[i][color] * n;
+            int used = (int) Math.min(amounts[color], produced);
+            amounts[color] -= used;
+            excess += produced - used;
+        }
+        amounts[GENERIC] -= (int) Math.min(amounts[GENERIC], excess);
+    }
+
+    /**
+     * Same as {@link #lower(int[], int, int)} on the missing amounts encoded in the state, generic mana being the most
+     * significant.
+     *
+     * @return state after tapping n lands of group i
+     */
+    private int step(int state, int i, int n) {
+        int after = state, excess = produces[i][GENERIC] * n;
+        for (int color : colors[i]) {
+            int produced = produces[i][color] * n;
+            if (amounts[color] == null) excess += produced;
+            else {
+                int used = Math.min(amounts[color][state], produced);
+                after -= used * weight[color];
+                excess += produced - used;
+            }
+        }
+        return amounts[GENERIC] == null ? after : after - Math.min(amounts[GENERIC][state], excess) * weight[GENERIC];
+    }
+
+    /**
+     * @return value of tapping n of size lands of a group: lands tapped, if the kind was emptied and the square of
+     * untapped lands, from the most significant field, weighted by {@link #weighValues()}
+     */
+    private long value(int size, int n) {
+        return n * tappedWeight + (n == size && n > 0 ? emptiedWeight : 0) + (long) (size - n) * (size - n);
+    }
+
+    /**
+     * Chooses the colored mana of the pool to spend as generic mana: colorless mana first, as it pays for the fewest
+     * costs, then mana of the colors with most mana to spare.
+     *
+     * @param pool pool with the lands already tapped
+     * @return mana to convert to generic mana
+     */
+    private Mana conversion(Mana pool) {
+        int[] spare = new int[COLLECTIBLE];
+        for (int color = 0; color < COLLECTIBLE; color++)
+            spare[color] = pool.amount(VALUES[color]) - cost[color];
+
+        StringBuilder converted = new StringBuilder();
+        for (int missing = cost[GENERIC] - pool.amount(Mana.Color.GENERIC); missing > 0; missing--) {
+            int from = Mana.Color.COLORLESS.ordinal();
+            if (spare[from] == 0)
+                for (int color = 0; color < COLLECTIBLE; color++)
+                    if (spare[color] > spare[from]) from = color;
+            spare[from]--;
+            converted.append(VALUES[from].symbol());
+        }
+        return converted.length() == 0 ? Mana.Cost.ZERO : new Mana(converted.toString());
+    }
+}
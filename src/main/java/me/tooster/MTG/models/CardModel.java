@@ -14,7 +14,7 @@ import java.util.Map;
 public class CardModel implements Model {
 
     public String                          name                  = "";
-    public Mana                            mana                  = new Mana();
+    public Mana                            mana                  = Mana.Cost.ZERO; // shared by all cards of the model
     public EnumSet<Supertype>              supertypes            = EnumSet.noneOf(Supertype.class);
     public EnumSet<Type>                   types                 = EnumSet.noneOf(Type.class);
     public EnumSet<Subtype>                subtypes              = EnumSet.noneOf(Subtype.class);
@@ -41,7 +41,7 @@ public class CardModel implements Model {
         this();
         try {
             if ((name = (String) data.get("name")) == null) throw new CardException("card has no 'name' field specified");
-            mana = new Mana((String) data.get("mana"));
+            mana = Mana.Cost.of((String) data.get("mana"));
 
             ((List<String>) data.getOrDefault("supertypes", Collections.emptyList())).stream()
                     .map(t -> Supertype.valueOf(t.toUpperCase())).forEach(supertypes::add);
@@ -8,6 +8,8 @@ import java.io.*;
 import java.net.*;
 import java.util.HashMap;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 import static me.tooster.client.ClientCommand.*;
@@ -24,7 +26,8 @@ class Client {
     }
 
     private static final int TIMEOUT_SERVER_HELLO_MS = 5_000; // timeout between CLIENT_HELLO and SERVER_HELLO
-    private static final int TIMEOUT_MSG_MS          = 0; //15_000; // timeout between messages
+    private static final int TIMEOUT_MSG_MS          = 15_000; // timeout between messages
+    private static final int RECONNECT_DELAY_MS      = 1_000; // delay between attempts to resume the session
     //----------------------------------------------------------------------------------------------------------------------------
     String  serverIP;  // currently connected server's IP
     Integer serverPort; // currently connected server's port
@@ -32,6 +35,11 @@ class Client {
     private Socket       socket;
     private OutputStream out;
     private InputStream  in;
+    private final ReentrantLock transmitLock   = new ReentrantLock(); // keepalive replies are sent from the listening thread
+    private volatile boolean    closing        = false; // disconnect was requested, so connection loss is expected
+    private long                lastSeq        = 0; // sequence number of the last message received, acknowledged when resuming
+    private long                resumeDeadline = 0; // nanoTime after which server dropped the session, 0 if not resuming
+    private long                lastCommandID  = 0; // ID of the last command sent, guarded by transmit lock
 
     final ClientStateMachine        cFSM;
     final Controller<ClientCommand> commandController; // ???
@@ -84,24 +92,30 @@ class Client {
             else switch (compiled.cmd) {
                     case HELP:
                         // return whole client's and server's help for enabled commands
-                        if (compiled.args.length == 1) { // "/help" without parameters
+                        if (compiled.argCount() == 1) { // "/help" without parameters
                             System.out.println(String.join("\n", commandController.enabledCommands.stream()
                                     .filter(Command::hasHelp)
                                     .map(c -> Formatter.YELLOW + Command.help(c) + Formatter.RESET)
                                     .toArray(String[]::new)));
 
-                            synchronized (cFSM) {
+                            cFSM.lock.lock();
+                            try {
                                 if (cFSM.getCurrentState() == CONNECTED)
                                     transmit(CommandMsg.newBuilder().setCommand(input));
+                            } finally {
+                                cFSM.lock.unlock();
                             }
 
                         } else {
                             // check if arg[0] is on client, print message if it is, send help request to server otherwise
                             var helpCmd = commandController.parse(compiled.arg(1)).cmd;
-                            synchronized (cFSM) {
+                            cFSM.lock.lock();
+                            try {
                                 if (helpCmd != null || cFSM.getCurrentState() != CONNECTED) // help is on client/not connected
                                     System.out.println(Formatter.YELLOW + Command.help(helpCmd) + Formatter.RESET);
                                 else transmit(CommandMsg.newBuilder().setCommand(input));
+                            } finally {
+                                cFSM.lock.unlock();
                             }
                         }
                         break;
@@ -122,20 +136,27 @@ class Client {
     /**
      * This method performs handshake with the server.
      *
+     * @param resume true to resume the session with the token received in previous SERVER_HELLO
      * @throws IOException throws if handshake failed.
      */
-    private void handshake() throws IOException {
-        transmit(ControlMsg.newBuilder()
+    private void handshake(boolean resume) throws IOException {
+        var hello = ControlMsg.newBuilder()
                 .setCode(ControlMsg.Code.CLIENT_HELLO)
-                .putConfiguration("nick", config.get("nick")));
+                .putConfiguration("nick", config.get("nick"));
+        if (resume)
+            hello.putConfiguration("resume", remoteConfig.get("resume"))
+                    .putConfiguration("ack", Long.toString(lastSeq));
+        transmit(hello);
         socket.setSoTimeout(TIMEOUT_SERVER_HELLO_MS); // 5 sec to wait for SERVER_HELLO
         Message msg = Message.parseDelimitedFrom(in);
         if (msg.getMsgTypeCase() == Message.MsgTypeCase.CONTROLMSG) { // must be a CONTROL either SERVER_HELLO or SERVER_DENY message
             var remoteConfig = msg.getControlMsg().getConfigurationMap();
             if (msg.getControlMsg().getCode() == ControlMsg.Code.SERVER_HELLO)
                 this.remoteConfig.putAll(remoteConfig);
-            else if (msg.getControlMsg().getCode() == ControlMsg.Code.SERVER_DENY)
+            else if (msg.getControlMsg().getCode() == ControlMsg.Code.SERVER_DENY) {
+                this.remoteConfig.remove("resume"); // session is gone, don't try to resume it again
                 throw new SocketException(remoteConfig.get("details"));
+            }
             else
                 throw new SecurityException("Protocol violation - message is neither " + ControlMsg.Code.SERVER_HELLO +
                         " nor " + ControlMsg.Code.SERVER_DENY);
@@ -143,13 +164,45 @@ class Client {
     }
 
     /**
-     * Connects to a server defined in IP and port variables and listens for input
+     * Connects to a server defined in IP and port variables and listens for input. If the connection drops, client
+     * reconnects and resumes the session for as long as the server keeps it.
      */
     void listenRemote() {
+        listenRemoteThread = Thread.currentThread();
+        closing = false;
+        lastSeq = 0;
+        remoteConfig.remove("resume");
+        resumeDeadline = 0;
+
+        while (listen(resumeDeadline != 0) && !closing && remoteConfig.containsKey("resume")) {
+            if (resumeDeadline == 0) {
+                System.out.println(Formatter.warning("Connection lost, reconnecting..."));
+                resumeDeadline = System.nanoTime() +
+                        TimeUnit.MILLISECONDS.toNanos(Long.parseLong(remoteConfig.getOrDefault("grace", "0")));
+            }
+            if (System.nanoTime() - resumeDeadline > 0) {
+                System.out.println(Formatter.error("Session expired."));
+                break;
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY_MS);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        cFSM.process(commandController.compile(CONNECTION_CLOSED)); // finalize by disconnecting
+    }
+
+    /**
+     * Connects to the server and listens for input until the connection is closed.
+     *
+     * @param resume true to resume the session of lost connection
+     * @return true if connection was lost in a way that allows resuming the session
+     */
+    private boolean listen(boolean resume) {
         try (Socket socket = new Socket()) {
 
             this.socket = socket;
-            listenRemoteThread = Thread.currentThread();
 
             socket.connect(new InetSocketAddress(serverIP, serverPort), 2 * TIMEOUT_MSG_MS); // await for connection...
 
@@ -157,17 +210,18 @@ class Client {
             in = socket.getInputStream();
 
 
-            handshake();
-            cFSM.process(commandController.compile(CONNECTION_ESABLISHED));
+            handshake(resume);
+            resumeDeadline = 0;
+            if (resume) System.out.println(Formatter.warning("Reconnected."));
+            else cFSM.process(commandController.compile(CONNECTION_ESABLISHED));
 
 
-            keepAlive:
             do { // every 10 seconds a control PING packet is sent to the server
                 socket.setSoTimeout(TIMEOUT_MSG_MS); // the 10 seconds are hardcoded for any activity from server
                 Message msg;
                 try {
                     msg = Message.parseDelimitedFrom(in);
-                    if (msg == null) break keepAlive; // connection closed by server
+                    if (msg == null) return true; // connection closed by server
                 } catch (SocketTimeoutException ignored) { // timeout reached without any data from server
                     // keepalive
                     transmit(ControlMsg.newBuilder().setCode(ControlMsg.Code.PING));
@@ -180,19 +234,24 @@ class Client {
 
         } catch (ConnectException e) {
             Client.LOGGER.warning(e.getMessage());
+            if (resume) return true; // server may be restarting, keep trying
             System.out.println(Formatter.error(String.format("Cannot connect to the server at %s:%s",
                     config.get("serverIP"),
                     config.get("serverPort"))));
+        } catch (SocketTimeoutException e) { // no response to keepalive
+            Client.LOGGER.warning("Server timed out.");
+            System.out.println(Formatter.error("Server is not responding."));
+            return true;
         } catch (SocketException e) { // connection reset, closed or others
             Client.LOGGER.warning(e.getMessage());
+            return true;
         } catch (SecurityException e) {
             Client.LOGGER.severe(e.getMessage());
         } catch (IOException e) { // some unexpected exceptions
             Client.LOGGER.severe(e.getMessage());
             e.printStackTrace();
-        } finally { // finalize by disconnecting
-            cFSM.process(commandController.compile(CONNECTION_CLOSED));
         }
+        return false;
     }
 
     /**
@@ -202,14 +261,21 @@ class Client {
      * @throws IOException idk, if something happens or some other shit
      */
     private void handleRemoteMessage(Message msg) throws IOException {
+        if (msg.getSeq() != 0) lastSeq = msg.getSeq();
         switch (msg.getMsgTypeCase()) {
             case CONTROLMSG: { // respond
                 var receivedConfig = msg.getControlMsg().getConfigurationMap();
                 switch (msg.getControlMsg().getCode()) {
+                    case PING: // server keepalive
+                        transmit(ControlMsg.newBuilder().setCode(ControlMsg.Code.PONG));
+                        break;
                     case PONG: break;
                     case CONFIG:
                         remoteConfig.putAll(receivedConfig);
                         break;
+                    case DONE: // all responses to command were received
+                        Client.LOGGER.finest("Command " + msg.getID() + " done.");
+                        break;
                     default:
                         Client.LOGGER.warning("Received wrong control while listening: " + msg.toString());
                 }
@@ -255,6 +321,7 @@ class Client {
      * Disconnects client from the server and halts the listening thread
      */
     void disconnect() {
+        closing = true;
         try {
             if (cFSM.getCurrentState() == CONNECTED && !socket.isClosed()) {
                 transmit(ControlMsg.newBuilder().setCode(ControlMsg.Code.CLIENT_DISCONNECT));
@@ -269,28 +336,41 @@ class Client {
     }
 
     /**
-     * Sends message to server
+     * Sends message to server. Commands are given consecutive IDs, which the server echoes on the responses.
      *
      * @param message message to send
      */
     void transmit(Object message) {
+        transmitLock.lock();
         try {
-            // build message from it's subtypes
-            var msg = Message.newBuilder();
             LOGGER.finest("Transmit: " + message.toString().replaceAll("\\n", " ").trim());
-            if (message instanceof ControlMsg.Builder)
-                msg.setControlMsg(((ControlMsg.Builder) message).build()).build().writeDelimitedTo(out);
-            else if (message instanceof CommandMsg.Builder)
-                msg.setCommandMsg(((CommandMsg.Builder) message).build()).build().writeDelimitedTo(out);
-            else
-                throw new IllegalArgumentException("Invalid message type");
-
-
+            wrap(message, message instanceof CommandMsg.Builder ? ++lastCommandID : 0).writeDelimitedTo(out);
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            transmitLock.unlock();
         }
     }
 
+    /**
+     * Builds message from it's subtype builder. Shared with the headless {@link LoadGenerator} bots.
+     *
+     * @param message builder of ControlMsg or CommandMsg
+     * @param id      ID of the command echoed by the server on the responses, 0 for none
+     * @return message ready to send
+     * @throws IllegalArgumentException for other message types
+     */
+    static Message wrap(Object message, long id) {
+        var msg = Message.newBuilder().setID(id);
+        if (message instanceof ControlMsg.Builder)
+            msg.setControlMsg(((ControlMsg.Builder) message).build());
+        else if (message instanceof CommandMsg.Builder)
+            msg.setCommandMsg(((CommandMsg.Builder) message).build());
+        else
+            throw new IllegalArgumentException("Invalid message type");
+        return msg.build();
+    }
+
     //------------------------------------------------------------------------------------------------------------------
 
     // arguments [nick server_IP server_port] can be passed
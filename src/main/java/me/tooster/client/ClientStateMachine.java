@@ -7,6 +7,8 @@ import me.tooster.common.Formatter;
 import me.tooster.common.proto.Messages;
 import me.tooster.common.proto.Messages.*;
 
+import java.util.List;
+
 
 import static me.tooster.client.ClientCommand.*;
 
@@ -30,8 +32,8 @@ class ClientStateMachine extends FiniteStateMachine<ClientStateMachine.State, Cl
             }
 
             @Override
-            public State process(ClientStateMachine fsm, Command.Compiled<ClientCommand>... input) {
-                var compiled = input[0];
+            public State process(ClientStateMachine fsm, List<Command.Compiled<ClientCommand>> input) {
+                var compiled = input.get(0);
                 if (compiled.cmd == null) {
                     System.out.println(Formatter.invalid("Unrecognized input."));
                     return this;
@@ -56,8 +58,8 @@ class ClientStateMachine extends FiniteStateMachine<ClientStateMachine.State, Cl
             }
 
             @Override
-            public State process(ClientStateMachine fsm, Compiled<ClientCommand>... input) {
-                var compiled = input[0];
+            public State process(ClientStateMachine fsm, List<Compiled<ClientCommand>> input) {
+                var compiled = input.get(0);
                 if (compiled.cmd == null) {
                     System.out.println(Formatter.invalid("Unrecognized input."));
                     return this;
@@ -85,15 +87,15 @@ class ClientStateMachine extends FiniteStateMachine<ClientStateMachine.State, Cl
             }
 
             @Override
-            public State process(ClientStateMachine fsm, Compiled<ClientCommand>... input) {
-                var compiled = input[0];
+            public State process(ClientStateMachine fsm, List<Compiled<ClientCommand>> input) {
+                var compiled = input.get(0);
                 if (compiled.cmd == null) {
                     fsm.client.transmit(Messages.CommandMsg.newBuilder().setCommand(compiled.arg(0))); // send raw input
                     return this;
                 }
                 switch (compiled.cmd) {
                     case CONFIG: // send only changed option
-                        if (compiled.args.length < 3) fsm.client.transmit(ControlMsg.newBuilder().setCode(ControlMsg.Code.CONFIG));
+                        if (compiled.argCount() < 3) fsm.client.transmit(ControlMsg.newBuilder().setCode(ControlMsg.Code.CONFIG));
                         else fsm.client.transmit(ControlMsg.newBuilder()
                                 .setCode(ControlMsg.Code.CONFIG)
                                 .putConfiguration(compiled.arg(1), compiled.arg(2)));
@@ -0,0 +1,334 @@
+package me.tooster.client;
+
+import me.tooster.common.proto.Messages.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Headless load generator. Spawns bots speaking the client protocol that play games against each other in pairs and
+ * measures the round-trip latency of their commands. Prints throughput and latency percentiles per command at the end.
+ * <p>
+ * Each pair of bots joins it's own hub and plays in a loop: <code>/ready</code>, <code>/keep</code>,
+ * <code>/tap</code> a land, <code>/cast</code> a card and <code>/pass</code>. Commands that aren't allowed at the moment
+ * are answered with an error, which is still a round trip through the server's command handling.
+ * Latency is measured from sending the command to receiving DONE with the command's ID, so it covers all the responses
+ * to the command, including the ones from the hub.
+ * <p>
+ * Run it against a local server:
+ * <pre>java -cp ... me.tooster.client.LoadGenerator [bots] [seconds] [server_IP] [server_port]</pre>
+ * Set <code>-Dmtg.load.think=ms</code> to make bots wait between commands. Bots that don't wait exceed the server's
+ * command rate limits, so start the server with <code>-Dmtg.limit.game.rate=0 -Dmtg.limit.chat.rate=0</code> to
+ * measure it without the limits. Set <code>-Dmtg.load.pipeline=n</code> to let bots send up to n commands without
+ * waiting for the previous ones to be done.
+ */
+class LoadGenerator {
+
+    /** time the bot waits between commands */
+    static final int THINK_MS            = Integer.getInteger("mtg.load.think", 0);
+    /** number of commands the bot sends without waiting for them to be done, set with -Dmtg.load.pipeline */
+    static final int PIPELINE            = Math.max(1, Integer.getInteger("mtg.load.pipeline", 1));
+    /** time the bot waits for a response before it counts the command as timed out */
+    static final int RESPONSE_TIMEOUT_MS = 5_000;
+
+    private static final Pattern  CARD_ID     = Pattern.compile("- (.+)@(\\d+)");
+    private static final String[] BASIC_LANDS = {"Plains", "Island", "Swamp", "Mountain", "Forest"};
+    private static final String[] SCRIPT      = {"/ready", "/keep", "/tap", "/cast", "/pass"};
+
+    private final String         serverIP;
+    private final int            serverPort;
+    private final List<Bot>      bots = new ArrayList<>();
+    private final CountDownLatch connected;
+
+    private LoadGenerator(String serverIP, int serverPort, int botCount) {
+        this.serverIP = serverIP;
+        this.serverPort = serverPort;
+        connected = new CountDownLatch(botCount);
+        for (int i = 0; i < botCount; i++) bots.add(new Bot(i));
+    }
+
+    /**
+     * Runs the bots for given time and prints the results.
+     *
+     * @param seconds how long the bots play
+     */
+    private void run(int seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> threads = new ArrayList<>();
+        for (Bot bot : bots) {
+            Thread thread = new Thread(() -> bot.play(deadline), "bot-" + bot.id);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        connected.await(30, TimeUnit.SECONDS);
+        long start = System.nanoTime();
+        for (Thread thread : threads) thread.join();
+        report(System.nanoTime() - start);
+    }
+
+    /**
+     * Prints throughput, percentiles per command and histogram of all latencies.
+     *
+     * @param elapsedNanos time the bots were playing
+     */
+    private void report(long elapsedNanos) {
+        Map<String, Latencies> byCommand = new TreeMap<>();
+        Latencies all = new Latencies();
+        long timeouts = 0, failed = 0;
+        for (Bot bot : bots) {
+            bot.latencies.forEach((cmd, l) -> byCommand.computeIfAbsent(cmd, c -> new Latencies()).addAll(l));
+            bot.latencies.values().forEach(all::addAll);
+            timeouts += bot.timeouts;
+            if (bot.failure != null) failed++;
+        }
+
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("bots: %d (%d failed), time: %.1fs, commands: %d, timeouts: %d%n",
+                bots.size(), failed, seconds, all.size(), timeouts);
+        System.out.printf("throughput: %.1f commands/s%n%n", all.size() / seconds);
+
+        System.out.printf("%-10s %9s %9s %9s %9s %9s %9s  (ms)%n", "command", "count", "p50", "p90", "p99", "p99.9", "max");
+        byCommand.forEach((cmd, l) -> printPercentiles(cmd, l));
+        printPercentiles("all", all);
+
+        System.out.println("\nlatency histogram (all commands):");
+        all.sort();
+        int[] buckets = new int[32]; // bucket i holds latencies in (2^(i-1), 2^i] microseconds
+        for (int i = 0; i < all.size(); i++)
+            buckets[Math.min(64 - Long.numberOfLeadingZeros(Math.max(all.get(i) / 1_000 - 1, 0)), 31)]++;
+        int maxBucket = Arrays.stream(buckets).max().orElse(0);
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] == 0) continue;
+            System.out.printf("<= %10.3f ms |%-50s %d%n", (1L << i) / 1000.0,
+                    "#".repeat((int) (50L * buckets[i] / maxBucket)), buckets[i]);
+        }
+    }
+
+    private static void printPercentiles(String name, Latencies l) {
+        if (l.size() == 0) return;
+        l.sort();
+        System.out.printf("%-10s %9d %9.3f %9.3f %9.3f %9.3f %9.3f%n", name, l.size(),
+                l.percentile(50) / 1e6, l.percentile(90) / 1e6, l.percentile(99) / 1e6, l.percentile(99.9) / 1e6,
+                l.get(l.size() - 1) / 1e6);
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Single simulated user with it's own connection.
+     */
+    private class Bot {
+        final int                    id;
+        final Map<String, Latencies> latencies = new HashMap<>(); // command alias -> latencies in nanos
+        long                         timeouts;
+        Exception                    failure;
+
+        private final BlockingQueue<Message> received     = new LinkedBlockingQueue<>();
+        private final ReentrantLock          transmitLock = new ReentrantLock(); // PONGs are sent by the reader
+        private final Map<String, String>    hand         = new LinkedHashMap<>(); // card id -> card name
+        private final Map<Long, Sent>        inFlight     = new HashMap<>(); // command ID -> command waiting for DONE
+        private long                         lastID;
+        private OutputStream                 out;
+
+        Bot(int id) { this.id = id; }
+
+        void play(long deadline) {
+            boolean counted = false;
+            try (Socket socket = new Socket()) {
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress(serverIP, serverPort), RESPONSE_TIMEOUT_MS);
+                out = socket.getOutputStream();
+                InputStream in = socket.getInputStream();
+                handshake(socket, in);
+
+                Thread reader = new Thread(() -> read(in), "bot-reader-" + id);
+                reader.setDaemon(true);
+                reader.start();
+                connected.countDown();
+                counted = true;
+
+                command("/join load-" + id / 2);
+                command("/deck select default");
+                for (int i = 0; System.nanoTime() < deadline; i = (i + 1) % SCRIPT.length) {
+                    String cmd = SCRIPT[i];
+                    if (cmd.equals("/tap")) cmd = pick(true);
+                    else if (cmd.equals("/cast")) cmd = pick(false);
+                    if (cmd != null) command(cmd);
+                    if (THINK_MS > 0) Thread.sleep(THINK_MS);
+                }
+                while (!inFlight.isEmpty()) awaitDone();
+                transmit(ControlMsg.newBuilder().setCode(ControlMsg.Code.CLIENT_DISCONNECT));
+            } catch (IOException | SecurityException e) {
+                failure = e;
+                System.err.println("bot " + id + " failed: " + e.getMessage());
+            } catch (InterruptedException ignored) {
+            } finally {
+                if (!counted) connected.countDown(); // failed before connecting
+            }
+        }
+
+        /**
+         * Performs client side of the handshake, same as {@link Client}.
+         */
+        private void handshake(Socket socket, InputStream in) throws IOException {
+            transmit(ControlMsg.newBuilder()
+                    .setCode(ControlMsg.Code.CLIENT_HELLO)
+                    .putConfiguration("nick", "bot" + id));
+            socket.setSoTimeout(RESPONSE_TIMEOUT_MS);
+            Message msg = Message.parseDelimitedFrom(in);
+            if (msg == null || msg.getControlMsg().getCode() != ControlMsg.Code.SERVER_HELLO)
+                throw new SecurityException("Didn't receive SERVER_HELLO");
+            socket.setSoTimeout(0); // the reader blocks until the connection is closed
+        }
+
+        /**
+         * Reads messages, answers keepalives and hands the rest over to the bot.
+         */
+        private void read(InputStream in) {
+            try {
+                Message msg;
+                while ((msg = Message.parseDelimitedFrom(in)) != null) {
+                    if (msg.getMsgTypeCase() == Message.MsgTypeCase.CONTROLMSG
+                            && msg.getControlMsg().getCode() == ControlMsg.Code.PING)
+                        transmit(ControlMsg.newBuilder().setCode(ControlMsg.Code.PONG));
+                    else received.add(msg);
+                }
+            } catch (IOException ignored) {} // connection closed
+        }
+
+        /**
+         * Sends the command, waiting first until there is less than {@link #PIPELINE} commands in flight.
+         */
+        private void command(String command) throws IOException, InterruptedException {
+            Message msg;
+            while ((msg = received.poll()) != null) observe(msg);
+            while (inFlight.size() >= PIPELINE) awaitDone();
+            long id = ++lastID;
+            inFlight.put(id, new Sent(command.split(" ")[0], System.nanoTime()));
+            transmit(CommandMsg.newBuilder().setCommand(command), id);
+        }
+
+        /**
+         * Waits for the next message. Commands in flight are counted as timed out if nothing comes.
+         */
+        private void awaitDone() throws InterruptedException {
+            Message msg = received.poll(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (msg == null) {
+                timeouts += inFlight.size();
+                inFlight.clear();
+            } else observe(msg);
+        }
+
+        /**
+         * Records latency of commands that are done and tracks the cards in hand from the hand listings sent by the
+         * server.
+         */
+        private void observe(Message msg) {
+            if (msg.getMsgTypeCase() == Message.MsgTypeCase.CONTROLMSG
+                    && msg.getControlMsg().getCode() == ControlMsg.Code.DONE) {
+                Sent sent = inFlight.remove(msg.getID());
+                if (sent != null)
+                    latencies.computeIfAbsent(sent.command, c -> new Latencies()).add(System.nanoTime() - sent.nanos);
+                return;
+            }
+            String text = msg.getVisualMsg().getMsg();
+            if (!text.startsWith("your  hand")) return;
+            hand.clear();
+            Matcher matcher = CARD_ID.matcher(text);
+            while (matcher.find()) hand.put(matcher.group(2), matcher.group(1));
+        }
+
+        /**
+         * @param land true to pick a land to tap, false to pick a card to cast
+         * @return the command with picked card or null if there is no such card in hand
+         */
+        private String pick(boolean land) {
+            for (var card : hand.entrySet()) {
+                if (Arrays.asList(BASIC_LANDS).contains(card.getValue()) == land)
+                    return (land ? "/tap " : "/cast ") + card.getKey();
+            }
+            return null;
+        }
+
+        private void transmit(Object message) throws IOException { transmit(message, 0); }
+
+        private void transmit(Object message, long id) throws IOException {
+            transmitLock.lock();
+            try {
+                Client.wrap(message, id).writeDelimitedTo(out);
+            } finally {
+                transmitLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Command waiting for DONE.
+     */
+    private static class Sent {
+        final String command; // alias of the command
+        final long   nanos;   // nanoTime when it was sent
+
+        Sent(String command, long nanos) {
+            this.command = command;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Growable array of latencies in nanoseconds.
+     */
+    private static class Latencies {
+        private long[] values = new long[256];
+        private int    size;
+
+        void add(long value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        void addAll(Latencies other) {
+            for (int i = 0; i < other.size; i++) add(other.values[i]);
+        }
+
+        int size() { return size; }
+
+        long get(int i) { return values[i]; }
+
+        void sort() { Arrays.sort(values, 0, size); }
+
+        /**
+         * @param p percentile from 0 to 100
+         * @return latency at percentile, latencies must be sorted
+         */
+        long percentile(double p) {
+            int rank = (int) Math.ceil(p / 100 * size) - 1;
+            return values[Math.max(0, Math.min(size - 1, rank))];
+        }
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    // arguments [bots seconds server_IP server_port] can be passed
+    public static void main(String[] args) throws InterruptedException {
+        int bots = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        String serverIP = args.length > 2 ? args[2] : "127.0.0.1";
+        int serverPort = args.length > 3 ? Integer.parseInt(args[3]) : 62442;
+
+        System.out.printf("Running %d bots against %s:%d for %ds...%n", bots, serverIP, serverPort, seconds);
+        new LoadGenerator(serverIP, serverPort, bots).run(seconds);
+    }
+}
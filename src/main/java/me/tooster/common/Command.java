@@ -6,6 +6,7 @@ import org.jetbrains.annotations.Nullable;
 import java.lang.annotation.*;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
 
 /**
  * Interface for commands with alias. Each command can be compiled with code in format
@@ -15,8 +16,6 @@ import java.util.EnumSet;
  */
 public interface Command {
 
-    // TODO: automatically generate fields from annotations using annotation processor
-
     // non internal commands should always have help
 
     /**
@@ -38,39 +37,26 @@ public interface Command {
     }
 
     /**
-     * Returns given annotation for enum or fails with null and prints stack trace
-     *
-     * @param annotationClass class of annotation to get
-     * @return annotation or null if it doesn't exist
+     * @return dispatch table of this command's enum
      */
-    @SuppressWarnings("unchecked")
-    private @Nullable Annotation getAnnotation(Class annotationClass) {
-        try {
-            return this.getClass().getDeclaredField(((Enum) this).name()).getAnnotation(annotationClass); // null alias
-        } catch (NoSuchFieldException e) {
-            e.printStackTrace();
-            return null;
-        } // this should never trigger
-    }
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private @NotNull CommandTable<?> table() { return CommandTable.of((Class) ((Enum<?>) this).getDeclaringClass()); }
 
     /**
      * @return Returns true if command has alias
      */
-    default boolean hasAlias() { return this.getAnnotation(Alias.class) != null; }
+    default boolean hasAlias() { return table().aliases(this).length > 0; }
 
     /**
      * @return list of aliases for the command
      */
-    default String[] aliases() {
-        var aliasAnnotation = (Alias) this.getAnnotation(Alias.class);
-        return aliasAnnotation != null ? aliasAnnotation.value() : new String[0];
-    }
+    default String[] aliases() { return table().aliases(this).clone(); }
 
     /**
      * @return main (first) alias of command or empty string if it doesn't exist
      */
     default @NotNull String mainAlias() {
-        String[] aliases = aliases();
+        String[] aliases = table().aliases(this);
         return aliases.length > 0 ? aliases[0] : "";
     }
 
@@ -83,12 +69,11 @@ public interface Command {
      * @return true if input equals (ignoring case) to any of the aliases
      */
     default boolean matches(String input) {
-        String[] inputParts = Formatter.splitParts(input).toArray(new String[0]);
-        for (var alias : aliases()) {
-            var aliasParts = Formatter.splitParts(alias).toArray(new String[0]);
-            boolean match = aliasParts.length <= inputParts.length;
+        Parts inputParts = Parts.of(input);
+        for (var aliasParts : table().aliasParts(this)) {
+            boolean match = aliasParts.length <= inputParts.size();
             // zip two parts
-            for (int i = 0; i < aliasParts.length && match; i++) match = aliasParts[i].equalsIgnoreCase(inputParts[i]);
+            for (int i = 0; i < aliasParts.length && match; i++) match = inputParts.equalsIgnoreCase(i, aliasParts[i]);
 
             if (match) return true;
         }
@@ -99,20 +84,18 @@ public interface Command {
      * @return Returns help message for this command defined in @Help annotation or detais message if @Help not found on command
      */
     default @NotNull String help() {
-        var helpAnnotation = (Help) this.getAnnotation(Help.class);
-        var aliases = aliases();
-        return helpAnnotation == null ? this + "> has no help message."
-                                      : aliases.length > 0
-                                        ? String.format("%-30s\t-> %s", String.join(", ", aliases),
-                                              helpAnnotation.value())
-                                        : String.format("%-30s\t-> %s", ((Enum) this).name() + ">",
-                                                helpAnnotation.value());
+        var help = table().help(this);
+        var aliases = table().aliases(this);
+        return help == null ? this + "> has no help message."
+                            : aliases.length > 0
+                              ? String.format("%-30s\t-> %s", String.join(", ", aliases), help)
+                              : String.format("%-30s\t-> %s", ((Enum) this).name() + ">", help);
     }
 
     /**
      * @return Returns true if command has help message. Safe for null arguments
      */
-    default boolean hasHelp() { return this.getAnnotation(Help.class) != null; }
+    default boolean hasHelp() { return table().help(this) != null; }
 
     /**
      * Returns help for command.
@@ -126,10 +109,11 @@ public interface Command {
     }
 
     class Controller<CMD extends Enum<CMD> & Command> {
-        public final Class<CMD>   commandEnumClass;
-        public final Object       owner;
-        public final EnumSet<CMD> enabledCommands; // by default all  disabled
-        public final EnumSet<CMD> commandMask; // commandMask for enable/disable etc. mask is clear at start
+        public final  Class<CMD>        commandEnumClass;
+        public final  Object            owner;
+        public final  EnumSet<CMD>      enabledCommands; // by default all  disabled
+        public final  EnumSet<CMD>      commandMask; // commandMask for enable/disable etc. mask is clear at start
+        private final CommandTable<CMD> table; // shared by all controllers of the command class
 
         /**
          * Creates a controller for managing commands.
@@ -142,6 +126,7 @@ public interface Command {
             this.owner = owner;
             enabledCommands = EnumSet.noneOf(commandEnumClass);
             commandMask = EnumSet.noneOf(commandEnumClass);
+            table = CommandTable.of(commandEnumClass);
         }
 
         /**
@@ -151,7 +136,8 @@ public interface Command {
          */
         public void setEnabled(CMD... commands) {
             enabledCommands.retainAll(commandMask);
-            EnumSet<CMD> cmdSwitch = EnumSet.copyOf(Arrays.asList(commands));
+            EnumSet<CMD> cmdSwitch = EnumSet.noneOf(commandEnumClass); // copyOf() fails for no commands
+            cmdSwitch.addAll(Arrays.asList(commands));
             cmdSwitch.removeAll(commandMask);
             enabledCommands.addAll(cmdSwitch);
         }
@@ -162,7 +148,8 @@ public interface Command {
          * @param commands commands to enable
          */
         public void enable(CMD... commands) {
-            EnumSet<CMD> cmdSwitch = EnumSet.copyOf(Arrays.asList(commands));
+            EnumSet<CMD> cmdSwitch = EnumSet.noneOf(commandEnumClass);
+            cmdSwitch.addAll(Arrays.asList(commands));
             cmdSwitch.removeAll(commandMask);
             enabledCommands.addAll(cmdSwitch);
         }
@@ -173,7 +160,8 @@ public interface Command {
          * @param commands commands to disable
          */
         public void disable(CMD... commands) {
-            EnumSet<CMD> cmdSwitch = EnumSet.copyOf(Arrays.asList(commands));
+            EnumSet<CMD> cmdSwitch = EnumSet.noneOf(commandEnumClass);
+            cmdSwitch.addAll(Arrays.asList(commands));
             cmdSwitch.removeAll(commandMask);
             enabledCommands.removeAll(cmdSwitch);
         }
@@ -216,22 +204,34 @@ public interface Command {
          */
         public boolean isMasked(CMD command) { return commandMask.contains(command);}
 
-        //TODO: add 'rawInput' field to Compiled
-
         /**
          * Parses the input and returns compiled command. If command didn't parse, then parsed command is null and
          * arg0 is raw input string. If parsed, args contain raw parts of command. Parsing is done as described in
-         * {@link me.tooster.common.Command#matches(String)}.
+         * {@link me.tooster.common.Command#matches(String)}, resolved with the {@link CommandTable} of command class.
          *
          * @param input input string to parse
          * @return compiled command with command and string argument list if parse was a success,
          * null and raw input as first argument otherwise
          */
-        public @NotNull Compiled<CMD> parse(@NotNull String input) {
-            for (CMD c : commandEnumClass.getEnumConstants())
-                if (c.matches(input))
-                    return compile(c, Formatter.splitParts(input).toArray(new String[0])); // argument list is command split onto parts
-            return compile(null, input); // not parsed is null with raw input as arg0
+        public @NotNull Compiled<CMD> parse(@NotNull String input) { return parse(Parts.of(input)); }
+
+        /**
+         * Parses input already split on parts, see {@link #parse(String)}.
+         *
+         * @param parts parts of the input
+         * @return compiled command or compiled null command with raw input as arg0 if input didn't parse
+         */
+        public @NotNull Compiled<CMD> parse(@NotNull Parts parts) {
+            Compiled<CMD> compiled = resolve(parts);
+            return compiled != null ? compiled : compile(null, parts.input.toString()); // not parsed is null with raw input as arg0
+        }
+
+        /**
+         * @return compiled command or null if input doesn't match any command
+         */
+        private @Nullable Compiled<CMD> resolve(@NotNull Parts parts) {
+            CMD command = table.resolve(parts.list());
+            return command != null ? new Compiled<>(this, command, parts) : null; // argument list is command split onto parts
         }
 
         /**
@@ -247,6 +247,57 @@ public interface Command {
 
     }
 
+    /**
+     * Routes input to the controllers of all command namespaces of it's owner. Input is split on parts once and
+     * resolved by the controllers in order, so the first controller has priority when aliases collide. Input that can't
+     * start any alias, like plain chat, isn't split at all.
+     */
+    class Router {
+        private final Controller<?>[] controllers;
+        private final String          aliasStarts; // first characters of all aliases in both cases, null if any is blank
+
+        /**
+         * @param controllers controllers in order of priority
+         */
+        public Router(Controller<?>... controllers) {
+            this.controllers = controllers.clone();
+            StringBuilder starts = new StringBuilder();
+            boolean blankAlias = false;
+            for (var controller : controllers) {
+                for (var command : controller.commandEnumClass.getEnumConstants()) {
+                    for (var alias : controller.table.aliases(command)) {
+                        alias = alias.strip();
+                        if (alias.isEmpty()) blankAlias = true; // matches any input
+                        else for (char c : new char[]{Character.toLowerCase(alias.charAt(0)),
+                                Character.toUpperCase(alias.charAt(0))})
+                            if (starts.indexOf(String.valueOf(c)) == -1) starts.append(c);
+                    }
+                }
+            }
+            aliasStarts = blankAlias ? null : starts.toString();
+        }
+
+        /**
+         * Resolves the input against the controllers.
+         *
+         * @param input input to route
+         * @return command compiled by the first controller that resolved it or null if none did
+         */
+        public @Nullable Compiled<?> route(@NotNull String input) {
+            if (aliasStarts != null) { // fast path for input that can't be a command
+                int i = 0;
+                while (i < input.length() && Parts.isSpace(input.charAt(i))) i++;
+                if (i == input.length() || aliasStarts.indexOf(input.charAt(i)) == -1) return null;
+            }
+            Parts parts = Parts.of(input);
+            for (var controller : controllers) {
+                Compiled<?> compiled = controller.resolve(parts);
+                if (compiled != null) return compiled;
+            }
+            return null;
+        }
+    }
+
     /**
      * Compiled command object.
      *
@@ -255,12 +306,12 @@ public interface Command {
     class Compiled<CMD extends Enum<CMD> & Command> {
         @NotNull public final  Controller<CMD> controller;  // controller that parsed this command
         @Nullable public final CMD             cmd;         // command for parse success, null otherwise
-        @NotNull public final  String[]        args;        // arguments as array of strings. arg 0 is command itself so
-        // `/test a b' argument list is {"/test", "a", "b"}
+        @NotNull public final  String          rawInput;    // input as received or args joined with spaces if compiled
+        @Nullable private final Parts          parts;       // parts of parsed input, null if compiled from args
+        private                String[]        args;        // arguments, arg 0 is command itself, null until read if parsed
 
         /**
-         * Creates new compiled command with final fields <code>command</code> and <code>args</code>. Those fields
-         * provide easy access to the parsed command object,
+         * Creates new compiled command from given arguments.
          *
          * @param controller controller that compiled this command
          * @param command    command enum representing the command, never null
@@ -276,6 +327,22 @@ public interface Command {
                         new String[0] :
                         new String[]{command.mainAlias()} :
                         args.clone();
+            this.rawInput = String.join(" ", this.args);
+            this.parts = null;
+        }
+
+        /**
+         * Creates compiled command from parsed input.
+         *
+         * @param controller controller that parsed this command
+         * @param command    command the input resolved to
+         * @param parts      parts of the input, arg0 is the command's alias
+         */
+        Compiled(@NotNull Controller<CMD> controller, @NotNull CMD command, @NotNull Parts parts) {
+            this.controller = controller;
+            this.cmd = command;
+            this.rawInput = parts.input.toString();
+            this.parts = parts;
         }
 
         /**
@@ -289,12 +356,42 @@ public interface Command {
         public boolean isMasked() {return controller.isMasked(this.cmd);}
 
 
+        /**
+         * @return number of arguments including the command itself, so <code>/test a b</code> has 3 arguments
+         */
+        public int argCount() { return parts != null ? parts.size() : args.length; }
+
         /**
          * @param idx index of argument starting at 0
          * @return argument if specified or empty string "" if doesn't exist
          */
         public String arg(int idx) {
-            return idx >= 0 ? idx < args.length ? args[idx] : "" : "";
+            if (idx < 0 || idx >= argCount()) return "";
+            return parts != null ? parts.get(idx) : args[idx];
+        }
+
+        /**
+         * Returns arguments as array of strings. Arg 0 is command itself so <code>/test a b</code> argument list is
+         * <code>{"/test", "a", "b"}</code>. Parsed commands create the array on first call, use {@link #arg(int)} and
+         * {@link #argCount()} to read only some of the arguments.
+         *
+         * @return arguments of the command
+         */
+        public @NotNull String[] args() {
+            if (args == null) args = parts.list().toArray(new String[0]);
+            return args;
+        }
+
+        /**
+         * Returns the raw input starting at given argument, keeping it's formatting, i.e. text of <code>/say</code>
+         * is <code>rest(1)</code>.
+         *
+         * @param idx index of the first argument
+         * @return rest of the input or empty string if there is no such argument
+         */
+        public @NotNull String rest(int idx) {
+            if (parts != null) return parts.rest(idx);
+            return idx >= 0 && idx < args.length ? String.join(" ", Arrays.copyOfRange(args, idx, args.length)) : "";
         }
 
         /**
@@ -305,7 +402,7 @@ public interface Command {
          */
         @Override
         public String toString() {
-            return cmd + "> " + String.join(" ", args);
+            return cmd + "> " + String.join(" ", args());
         }
     }
 
@@ -0,0 +1,160 @@
+package me.tooster.common;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dispatch table of a command enum, built once per enum class. Holds aliases and help of the commands and a trie of
+ * alias parts, which resolves input to a command in a single pass over the input parts.
+ * <p>
+ * Aliases and help come from the <code>&lt;Enum&gt;Table</code> class generated at compile time by
+ * <code>CommandTableProcessor</code> from the {@link Command.Alias} and {@link Command.Help} annotations. The generated
+ * class registers the table when initialized. Only when sources were compiled without the processor, the annotations
+ * are read by reflection once.
+ * <p>
+ * Parts in the trie are compared ignoring case, same as {@link Command#matches(String)} does. When aliases of many
+ * commands match the input, the command declared first wins, so {@code @Alias("/deck select")} declared before
+ * {@code @Alias("/deck")} resolves <code>/deck select x</code> to the former and <code>/deck x</code> to the latter.
+ * <p>
+ * Tables are immutable once built and can be shared between threads.
+ *
+ * @param <CMD> command enum
+ */
+public final class CommandTable<CMD extends Enum<CMD> & Command> {
+
+    private static final Map<Class<?>, CommandTable<?>> TABLES = new ConcurrentHashMap<>();
+
+    private final CMD[]        commands;    // by ordinal
+    private final String[][]   aliases;     // by ordinal
+    private final String[][][] aliasParts;  // by ordinal, parts of each alias
+    private final String[]     help;        // by ordinal, null for commands without help
+    private final Node         root = new Node();
+
+    /**
+     * @param commandClass command enum
+     * @return table of the command enum, built on first use
+     */
+    @SuppressWarnings("unchecked")
+    public static <CMD extends Enum<CMD> & Command> @NotNull CommandTable<CMD> of(Class<CMD> commandClass) {
+        var table = TABLES.get(commandClass);
+        if (table == null) {
+            try { // generated table registers itself when initialized
+                Class.forName(tableClassName(commandClass), true, commandClass.getClassLoader());
+            } catch (ClassNotFoundException ignored) {} // compiled without the processor
+            table = TABLES.computeIfAbsent(commandClass, c -> fromAnnotations(commandClass));
+        }
+        return (CommandTable<CMD>) table;
+    }
+
+    /**
+     * Registers the table of command enum. Called by the generated <code>&lt;Enum&gt;Table</code> classes.
+     *
+     * @param commandClass command enum
+     * @param aliases      aliases of the commands by ordinal, main alias first
+     * @param help         help of the commands by ordinal, null for commands without help
+     * @throws IllegalStateException if the tables don't match the enum, which means generated class is stale
+     */
+    public static <CMD extends Enum<CMD> & Command> void register(Class<CMD> commandClass,
+                                                                  String[][] aliases, String[] help) {
+        TABLES.putIfAbsent(commandClass, new CommandTable<>(commandClass, aliases, help));
+    }
+
+    /**
+     * @return name of the class generated for command enum, nested enums are flattened: Outer$Inner -> Outer_InnerTable
+     */
+    private static String tableClassName(Class<?> commandClass) {
+        String packageName = commandClass.getPackageName();
+        String enumName = commandClass.getName().substring(packageName.isEmpty() ? 0 : packageName.length() + 1);
+        return (packageName.isEmpty() ? "" : packageName + ".") + enumName.replace('$', '_') + "Table";
+    }
+
+    /**
+     * Builds the table reading the annotations of command enum by reflection.
+     */
+    private static <CMD extends Enum<CMD> & Command> CommandTable<CMD> fromAnnotations(Class<CMD> commandClass) {
+        CMD[] commands = commandClass.getEnumConstants();
+        String[][] aliases = new String[commands.length][];
+        String[] help = new String[commands.length];
+        for (CMD command : commands) {
+            try {
+                var field = commandClass.getDeclaredField(command.name());
+                var aliasAnnotation = field.getAnnotation(Command.Alias.class);
+                var helpAnnotation = field.getAnnotation(Command.Help.class);
+                aliases[command.ordinal()] = aliasAnnotation != null ? aliasAnnotation.value() : new String[0];
+                help[command.ordinal()] = helpAnnotation != null ? helpAnnotation.value() : null;
+            } catch (NoSuchFieldException e) { // enum constants are always fields
+                throw new IllegalStateException(e);
+            }
+        }
+        return new CommandTable<>(commandClass, aliases, help);
+    }
+
+    private CommandTable(Class<CMD> commandClass, String[][] aliases, String[] help) {
+        commands = commandClass.getEnumConstants();
+        if (aliases.length != commands.length || help.length != commands.length)
+            throw new IllegalStateException("Command table of " + commandClass.getName() + " is stale, recompile it");
+        this.aliases = aliases;
+        this.help = help;
+        aliasParts = new String[commands.length][][];
+        for (int ordinal = 0; ordinal < commands.length; ordinal++) {
+            aliasParts[ordinal] = new String[aliases[ordinal].length][];
+            for (int i = 0; i < aliases[ordinal].length; i++) {
+                aliasParts[ordinal][i] = Formatter.splitParts(aliases[ordinal][i]).toArray(new String[0]);
+                insert(aliasParts[ordinal][i], ordinal);
+            }
+        }
+    }
+
+    private void insert(String[] parts, int ordinal) {
+        Node node = root;
+        for (String part : parts) node = node.children.computeIfAbsent(part, p -> new Node());
+        if (node.command == -1 || ordinal < node.command) node.command = ordinal;
+    }
+
+    /**
+     * Resolves the command matching input parts on prefix.
+     *
+     * @param parts parts of the input, see {@link Parts}
+     * @return first declared command with alias matching the input or null if none matches
+     */
+    public @Nullable CMD resolve(@NotNull List<String> parts) {
+        Node node = root;
+        int best = node.command;
+        for (int i = 0; i < parts.size(); i++) {
+            if ((node = node.children.get(parts.get(i))) == null) break;
+            if (node.command != -1 && (best == -1 || node.command < best)) best = node.command;
+        }
+        return best == -1 ? null : commands[best];
+    }
+
+    /**
+     * @param command command from this table
+     * @return aliases of the command, main alias first. The array is shared and mustn't be modified
+     */
+    @NotNull String[] aliases(Command command) { return aliases[((Enum<?>) command).ordinal()]; }
+
+    /**
+     * @param command command from this table
+     * @return aliases of the command split on parts. The arrays are shared and mustn't be modified
+     */
+    @NotNull String[][] aliasParts(Command command) { return aliasParts[((Enum<?>) command).ordinal()]; }
+
+    /**
+     * @param command command from this table
+     * @return help of the command or null if it has none
+     */
+    @Nullable String help(Command command) { return help[((Enum<?>) command).ordinal()]; }
+
+    /**
+     * Node of the alias trie. Command is the ordinal of the first declared command with alias ending here or -1.
+     */
+    private static final class Node {
+        private final Map<String, Node> children = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private int                     command  = -1;
+    }
+}
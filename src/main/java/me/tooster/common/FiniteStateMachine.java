@@ -2,6 +2,8 @@ package me.tooster.common;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 
 // TODO: right now doin the hubFSM to manage ready/not ready players
@@ -18,6 +20,12 @@ public abstract class FiniteStateMachine<StateT extends FiniteStateMachine.State
     private StateT initialState;
     private StateT currentState;
 
+    /**
+     * Lock guarding the transitions. It's a lock and not a monitor so virtual threads driving the machine don't pin their
+     * carrier threads while processing.
+     */
+    public final ReentrantLock lock = new ReentrantLock();
+
     /**
      * Sets the auto model. The FSM workflow looks like that:
      * <pre>
@@ -44,37 +52,55 @@ public abstract class FiniteStateMachine<StateT extends FiniteStateMachine.State
      * Advances the state of FSM. It will keep processing with the same input until <code>disableAuto()</code> is called.
      * Shared state can be passed in finite state machine or input objects.
      *
-     * @param input input for the FSM
+     * @param input inputs for the FSM
      * @return returns the finite state machine object to enable linking the process(), lock() and unlock() calls
      */
     @SuppressWarnings("unchecked")
-    public synchronized FiniteStateMachine<StateT, FsmT, InputT> process(InputT... input) {
-        do {
-            if (currentState == null) throw new RuntimeException("FSM halted. ");
-            StateT previousState = currentState;
-            try {
-                prepcocess((FsmT) this, input);
-                StateT nextState = currentState.process((FsmT) this, input);
-                if (currentState != nextState) {
-                    currentState.onExit((FsmT) this, nextState);
-                    currentState = nextState;
-                    nextState.onEnter((FsmT) this, previousState);
+    public FiniteStateMachine<StateT, FsmT, InputT> process(List<InputT> input) {
+        lock.lock();
+        try {
+            do {
+                if (currentState == null) throw new RuntimeException("FSM halted. ");
+                StateT previousState = currentState;
+                try {
+                    prepcocess((FsmT) this, input);
+                    StateT nextState = currentState.process((FsmT) this, input);
+                    if (currentState != nextState) {
+                        currentState.onExit((FsmT) this, nextState);
+                        currentState = nextState;
+                        if (nextState != null) nextState.onEnter((FsmT) this, previousState); // null halts the machine
+                    }
+                    postprocess((FsmT) this, input);
+                } catch (AbortTransition abort) {
+                    abort.cleanupHandler.run();
+                    currentState = previousState;
                 }
-                postprocess((FsmT) this, input);
-            } catch (AbortTransition abort) {
-                abort.cleanupHandler.run();
-                currentState = previousState;
-            }
-        } while (autoProcess);
+            } while (autoProcess);
+        } finally {
+            lock.unlock();
+        }
         return this;
     }
 
+    /**
+     * Advances the state of FSM with a single input, see {@link #process(List)}.
+     *
+     * @param input input for the FSM
+     * @return returns the finite state machine object to enable linking the process(), lock() and unlock() calls
+     */
+    public FiniteStateMachine<StateT, FsmT, InputT> process(InputT input) { return process(List.of(input)); }
+
     /**
      * Starts the state machine from initial state triggering onEnter with prevState=null on initial state
      */
-    public synchronized void start() {
-        currentState = null;
-        forceState(initialState);
+    public void start() {
+        lock.lock();
+        try {
+            currentState = null;
+            forceState(initialState);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -98,10 +124,15 @@ public abstract class FiniteStateMachine<StateT extends FiniteStateMachine.State
      * @param newState new state to set
      */
     @SuppressWarnings("unchecked")
-    public synchronized FiniteStateMachine<StateT, FsmT, InputT> forceState(StateT newState) {
-        try { if (currentState != null) currentState.onExit((FsmT) this, null); } catch (AbortTransition ignored) {}
-        currentState = newState;
-        try { if (currentState != null) currentState.onEnter((FsmT) this, null); } catch (AbortTransition ignored) {}
+    public FiniteStateMachine<StateT, FsmT, InputT> forceState(StateT newState) {
+        lock.lock();
+        try {
+            try { if (currentState != null) currentState.onExit((FsmT) this, null); } catch (AbortTransition ignored) {}
+            currentState = newState;
+            try { if (currentState != null) currentState.onEnter((FsmT) this, null); } catch (AbortTransition ignored) {}
+        } finally {
+            lock.unlock();
+        }
         return this;
     }
 
@@ -112,7 +143,7 @@ public abstract class FiniteStateMachine<StateT extends FiniteStateMachine.State
      * @param input input that will be supplied to a state's `process()` method
      * @throws AbortTransition thrown when on the preprocess stage we want to exit prematurely
      */
-    public void prepcocess(FsmT fsm, InputT... input) throws AbortTransition {}
+    public void prepcocess(FsmT fsm, List<InputT> input) throws AbortTransition {}
 
     /**
      * Event run after every `process()` and `onEnter/onExit` events.
@@ -121,7 +152,7 @@ public abstract class FiniteStateMachine<StateT extends FiniteStateMachine.State
      * @param input input that will be supplied to a state's `process()` method
      * @throws AbortTransition thrown when on the preprocess stage we want to exit prematurely
      */
-    public void postprocess(FsmT fsm, InputT... input) throws AbortTransition {}
+    public void postprocess(FsmT fsm, List<InputT> input) throws AbortTransition {}
 
     /**
      * This throwable is a lightweight object that can be thrown at any point during transition events in FSM to break out of transi
@@ -163,7 +194,7 @@ public abstract class FiniteStateMachine<StateT extends FiniteStateMachine.State
          * @param fsm   containing machine
          * @return next state or this if state stays the same
          */
-        StateT process(FsmT fsm, InputT... input);
+        StateT process(FsmT fsm, List<InputT> input);
 
         /**
          * Method invoked when new state is entered.
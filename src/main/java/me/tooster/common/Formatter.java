@@ -5,8 +5,6 @@ import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 
 /**
@@ -206,14 +204,7 @@ public enum Formatter {
      * @param input input to split into parts
      * @return list of parts as described above.
      */
-    public static List<String> splitParts(String input) {
-        List<String> matchList = new ArrayList<>();
-        Pattern regex = Pattern.compile("[^\\s\"]+|\"([^\"]*)\""); // matches: (abcd) "(xy zv)" (x)
-        Matcher regexMatcher = regex.matcher(input);
-        while (regexMatcher.find())
-            matchList.add(regexMatcher.group(1) != null ? regexMatcher.group(1) : regexMatcher.group());
-        return matchList;
-    }
+    public static List<String> splitParts(String input) { return new ArrayList<>(Parts.of(input).list()); }
 
     /**
      * Removes given part from the string
@@ -224,16 +215,11 @@ public enum Formatter {
      * @return input without part and it's trailing whitespaces: `remove  the      idx=1  part` -> `remove  idx=1 part`
      */
     public static String removePart(Integer idx, String input) {
-        Pattern regex = Pattern.compile("[^\\s\"]+\\s*|\"[^\"]*\"\\s*"); // matches: (abcd) "(xy zv)" (x)
-        Matcher regexMatcher = regex.matcher(input);
-        int i = 0;
-        int start = 0, end = 0;
-        while (regexMatcher.find())
-            if (i++ == idx) {
-                start = regexMatcher.start();
-                end = regexMatcher.end();
-            }
-        return input.substring(0, start) + input.substring(end);
+        Parts parts = Parts.of(input);
+        if (idx < 0 || idx >= parts.size()) return input;
+        int end = parts.end(idx);
+        while (end < input.length() && Parts.isSpace(input.charAt(end))) end++; // trailing whitespaces
+        return input.substring(0, parts.start(idx)) + input.substring(end);
     }
 
     /**
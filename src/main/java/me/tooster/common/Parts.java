@@ -0,0 +1,178 @@
+package me.tooster.common;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Input split on parts once. Parts are words and doubly quoted phrases:
+ * <code>this "for example consists" 'of 5' parts</code> consists of parts `this` `for example consists` `'of` `5'`
+ * `parts`. Quoted phrases are returned without the quotes. A quote without the closing one is skipped.
+ * <p>
+ * Splitting only records the offsets of the parts in the input. Strings of the parts are created lazily when they are
+ * read, so inputs that are only checked or partially read, like chat text after the command, cost no substrings.
+ * Offsets also let commands take the rest of the input with it's original formatting.
+ * <p>
+ * Splitting gives the same parts as matching <code>[^\s"]+|"([^"]*)"</code> in a loop, without regular expressions.
+ */
+public final class Parts {
+
+    public final @NotNull CharSequence input; // raw input
+
+    private final int[]    bounds; // start and end offset of each part, quotes included: [start0, end0, start1, ...]
+    private final int      size;
+    private final String[] strings; // materialized parts, null until read
+    private List<String>   list;    // lazy view of the parts
+
+    private Parts(CharSequence input, int[] bounds, int size) {
+        this.input = input;
+        this.bounds = bounds;
+        this.size = size;
+        this.strings = new String[size];
+    }
+
+    /**
+     * Splits the input on parts.
+     *
+     * @param input input to split
+     * @return parts of the input
+     */
+    public static @NotNull Parts of(@NotNull CharSequence input) {
+        int[] bounds = new int[8];
+        int size = 0;
+        int length = input.length();
+        int i = 0;
+        while (i < length) {
+            char c = input.charAt(i);
+            int start = i, end;
+            if (isSpace(c)) {
+                i++;
+                continue;
+            } else if (c == '"') { // quoted phrase up to the closing quote
+                end = i + 1;
+                while (end < length && input.charAt(end) != '"') end++;
+                if (end == length) { // no closing quote, skip the quote
+                    i++;
+                    continue;
+                }
+                end++; // closing quote
+            } else { // word up to whitespace or quote
+                end = i + 1;
+                while (end < length && !isSpace(c = input.charAt(end)) && c != '"') end++;
+            }
+
+            if (2 * size == bounds.length) bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            bounds[2 * size] = start;
+            bounds[2 * size + 1] = end;
+            size++;
+            i = end;
+        }
+        return new Parts(input, bounds, size);
+    }
+
+    /**
+     * @param c character to check
+     * @return true for whitespace separating the parts, same as <code>\s</code> in regular expressions
+     */
+    static boolean isSpace(char c) { return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r'; }
+
+    /**
+     * @return number of parts
+     */
+    public int size() { return size; }
+
+    /**
+     * @param idx index of part starting from 0
+     * @return offset of the part in the input, including the opening quote
+     */
+    public int start(int idx) {
+        checkIndex(idx);
+        return bounds[2 * idx];
+    }
+
+    /**
+     * @param idx index of part starting from 0
+     * @return offset after the part in the input, including the closing quote
+     */
+    public int end(int idx) {
+        checkIndex(idx);
+        return bounds[2 * idx + 1];
+    }
+
+    /**
+     * @param idx index of part starting from 0
+     * @return the part, quoted phrases without quotes
+     */
+    public @NotNull String get(int idx) {
+        checkIndex(idx);
+        String part = strings[idx];
+        if (part == null) {
+            int start = bounds[2 * idx], end = bounds[2 * idx + 1];
+            if (input.charAt(start) == '"') { // strip the quotes
+                start++;
+                end--;
+            }
+            strings[idx] = part = input.subSequence(start, end).toString();
+        }
+        return part;
+    }
+
+    /**
+     * Compares the part with the string ignoring case, same as {@link String#equalsIgnoreCase(String)}, without
+     * creating the part's string.
+     *
+     * @param idx   index of part starting from 0
+     * @param other string to compare with
+     * @return true if the part equals the string ignoring case
+     */
+    public boolean equalsIgnoreCase(int idx, @NotNull String other) {
+        checkIndex(idx);
+        int start = bounds[2 * idx], end = bounds[2 * idx + 1];
+        if (input.charAt(start) == '"') {
+            start++;
+            end--;
+        }
+        if (end - start != other.length()) return false;
+        for (int i = 0; i < other.length(); i++) {
+            char a = input.charAt(start + i), b = other.charAt(i);
+            if (a != b && Character.toUpperCase(a) != Character.toUpperCase(b)
+                    && Character.toLowerCase(a) != Character.toLowerCase(b))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return unmodifiable list of the parts, creating the strings of the parts when they are read
+     */
+    public @NotNull List<String> list() {
+        if (list == null) list = new View();
+        return list;
+    }
+
+    /**
+     * Returns the input starting at given part, with it's original formatting: for <code>/m bob  hi   there</code>
+     * rest(2) is <code>hi   there</code>.
+     *
+     * @param idx index of the first part to return
+     * @return rest of the input from the part or empty string if there is no such part
+     */
+    public @NotNull String rest(int idx) {
+        return idx >= 0 && idx < size ? input.subSequence(bounds[2 * idx], input.length()).toString() : "";
+    }
+
+    private void checkIndex(int idx) {
+        if (idx < 0 || idx >= size) throw new IndexOutOfBoundsException("Part " + idx + " of " + size);
+    }
+
+    private final class View extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int index) { return Parts.this.get(index); }
+
+        @Override
+        public int size() { return size; }
+    }
+}
@@ -0,0 +1,198 @@
+package me.tooster.common;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timing wheel. Timeouts are hashed into the buckets of the wheel by their deadline and a single worker thread
+ * advances the wheel every tick, running the tasks that expired. Scheduling and cancelling are O(1) and lock free for
+ * the callers at the cost of tick precision, which makes the wheel fit for a large number of timeouts that are mostly
+ * cancelled, like idle timeouts of connections.
+ * <p>
+ * Tasks run on the worker thread, so they must be short and hand off any blocking work.
+ */
+public final class TimerWheel {
+
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000; // so a flood of new timeouts can't stall the wheel
+
+    private final long            tickNanos;
+    private final Bucket[]        wheel;
+    private final int             mask;
+    private final Queue<Timeout>  pending   = new ConcurrentLinkedQueue<>(); // scheduled, not yet in the wheel
+    private final Queue<Timeout>  cancelled = new ConcurrentLinkedQueue<>(); // cancelled, still in the wheel
+    private final Thread          worker;
+    private final long            startTime;
+    private volatile boolean      running   = true;
+    private long                  tick; // accessed only by the worker
+
+    /**
+     * Creates the wheel and starts it's worker thread.
+     *
+     * @param name      name of the worker thread
+     * @param tick      duration of a single tick, timeouts fire with this precision
+     * @param unit      unit of the tick
+     * @param wheelSize number of buckets, rounded up to a power of 2
+     */
+    public TimerWheel(String name, long tick, TimeUnit unit, int wheelSize) {
+        tickNanos = Math.max(unit.toNanos(tick), 1);
+        wheel = new Bucket[Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1];
+        for (int i = 0; i < wheel.length; i++) wheel[i] = new Bucket();
+        mask = wheel.length - 1;
+        startTime = System.nanoTime();
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Schedules the task to run once after the delay.
+     *
+     * @param task  task to run on the worker thread
+     * @param delay delay after which the task runs
+     * @param unit  unit of the delay
+     * @return handle of the timeout that can cancel it
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        var timeout = new Timeout(task, System.nanoTime() - startTime + Math.max(unit.toNanos(delay), 0));
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stops the worker thread. Timeouts that didn't expire yet never run.
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos = startTime + deadline - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    continue; // stopped
+                }
+            }
+            removeCancelled();
+            transferPending();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null)
+            if (timeout.bucket != null) timeout.bucket.remove(timeout);
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK && (timeout = pending.poll()) != null; i++) {
+            if (timeout.state.get() != Timeout.INIT) continue; // cancelled before it got to the wheel
+            long ticks = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            wheel[(int) (Math.max(ticks, tick) & mask)].add(timeout); // overdue timeouts go to the current bucket
+        }
+    }
+
+    /**
+     * Handle of scheduled task.
+     */
+    public final class Timeout {
+        private static final int INIT = 0, CANCELLED = 1, EXPIRED = 2;
+
+        private final Runnable      task;
+        private final long          deadline; // nanos since the wheel started
+        private final AtomicInteger state = new AtomicInteger(INIT);
+        // accessed only by the worker
+        private long    remainingRounds;
+        private Bucket  bucket;
+        private Timeout prev, next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the timeout, so it's task never runs.
+         *
+         * @return true if timeout was cancelled, false if it already expired or was cancelled before
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(INIT, CANCELLED)) return false;
+            cancelled.add(this);
+            return true;
+        }
+
+        /**
+         * @return true if the timeout was cancelled
+         */
+        public boolean isCancelled() { return state.get() == CANCELLED; }
+
+        /**
+         * @return true if the task was run
+         */
+        public boolean isExpired() { return state.get() == EXPIRED; }
+
+        private void expire() {
+            if (!state.compareAndSet(INIT, EXPIRED)) return;
+            try {
+                task.run();
+            } catch (RuntimeException e) { // one failed task mustn't stop the wheel
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts, so a timeout can be removed in O(1).
+     */
+    private static final class Bucket {
+        private Timeout head, tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) head = tail = timeout;
+            else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) timeout.prev.next = timeout.next;
+            else head = timeout.next;
+            if (timeout.next != null) timeout.next.prev = timeout.prev;
+            else tail = timeout.prev;
+            timeout.prev = timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        /**
+         * Runs timeouts of the current round and counts down the rest.
+         *
+         * @param deadline deadline of the current tick
+         */
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) remove(timeout);
+                else timeout.remainingRounds--;
+                timeout = next;
+            }
+        }
+    }
+}
@@ -20,7 +20,7 @@ public final class Messages {
 
     /**
      * <pre>
-     * can be used in request-response system
+     * ID of the command set by the client, echoed on the responses to it, 0 if not set
      * </pre>
      *
      * <code>int64 ID = 1;</code>
@@ -66,6 +66,15 @@ public final class Messages {
      */
     me.tooster.common.proto.Messages.CommandMsgOrBuilder getCommandMsgOrBuilder();
 
+    /**
+     * <pre>
+     * sequence number of server messages kept for replay on session resume, 0 if not set
+     * </pre>
+     *
+     * <code>int64 seq = 5;</code>
+     */
+    long getSeq();
+
     public me.tooster.common.proto.Messages.Message.MsgTypeCase getMsgTypeCase();
   }
   /**
@@ -160,6 +169,11 @@ public final class Messages {
               msgTypeCase_ = 4;
               break;
             }
+            case 40: {
+
+              seq_ = input.readInt64();
+              break;
+            }
             default: {
               if (!parseUnknownField(
                   input, unknownFields, extensionRegistry, tag)) {
@@ -236,7 +250,7 @@ public final class Messages {
     private long iD_;
     /**
      * <pre>
-     * can be used in request-response system
+     * ID of the command set by the client, echoed on the responses to it, 0 if not set
      * </pre>
      *
      * <code>int64 ID = 1;</code>
@@ -323,6 +337,19 @@ public final class Messages {
       return me.tooster.common.proto.Messages.CommandMsg.getDefaultInstance();
     }
 
+    public static final int SEQ_FIELD_NUMBER = 5;
+    private long seq_;
+    /**
+     * <pre>
+     * sequence number of server messages kept for replay on session resume, 0 if not set
+     * </pre>
+     *
+     * <code>int64 seq = 5;</code>
+     */
+    public long getSeq() {
+      return seq_;
+    }
+
     private byte memoizedIsInitialized = -1;
     @java.lang.Override
     public final boolean isInitialized() {
@@ -349,6 +376,9 @@ public final class Messages {
       if (msgTypeCase_ == 4) {
         output.writeMessage(4, (me.tooster.common.proto.Messages.CommandMsg) msgType_);
       }
+      if (seq_ != 0L) {
+        output.writeInt64(5, seq_);
+      }
       unknownFields.writeTo(output);
     }
 
@@ -374,6 +404,10 @@ public final class Messages {
         size += com.google.protobuf.CodedOutputStream
           .computeMessageSize(4, (me.tooster.common.proto.Messages.CommandMsg) msgType_);
       }
+      if (seq_ != 0L) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeInt64Size(5, seq_);
+      }
       size += unknownFields.getSerializedSize();
       memoizedSize = size;
       return size;
@@ -391,6 +425,8 @@ public final class Messages {
 
       if (getID()
           != other.getID()) return false;
+      if (getSeq()
+          != other.getSeq()) return false;
       if (!getMsgTypeCase().equals(other.getMsgTypeCase())) return false;
       switch (msgTypeCase_) {
         case 2:
@@ -422,6 +458,9 @@ public final class Messages {
       hash = (37 * hash) + ID_FIELD_NUMBER;
       hash = (53 * hash) + com.google.protobuf.Internal.hashLong(
           getID());
+      hash = (37 * hash) + SEQ_FIELD_NUMBER;
+      hash = (53 * hash) + com.google.protobuf.Internal.hashLong(
+          getSeq());
       switch (msgTypeCase_) {
         case 2:
           hash = (37 * hash) + CONTROLMSG_FIELD_NUMBER;
@@ -573,6 +612,8 @@ public final class Messages {
         super.clear();
         iD_ = 0L;
 
+        seq_ = 0L;
+
         msgTypeCase_ = 0;
         msgType_ = null;
         return this;
@@ -623,6 +664,7 @@ public final class Messages {
             result.msgType_ = commandMsgBuilder_.build();
           }
         }
+        result.seq_ = seq_;
         result.msgTypeCase_ = msgTypeCase_;
         onBuilt();
         return result;
@@ -675,6 +717,9 @@ public final class Messages {
         if (other.getID() != 0L) {
           setID(other.getID());
         }
+        if (other.getSeq() != 0L) {
+          setSeq(other.getSeq());
+        }
         switch (other.getMsgTypeCase()) {
           case CONTROLMSG: {
             mergeControlMsg(other.getControlMsg());
@@ -739,7 +784,7 @@ public final class Messages {
       private long iD_ ;
       /**
        * <pre>
-       * can be used in request-response system
+       * ID of the command set by the client, echoed on the responses to it, 0 if not set
        * </pre>
        *
        * <code>int64 ID = 1;</code>
@@ -749,7 +794,7 @@ public final class Messages {
       }
       /**
        * <pre>
-       * can be used in request-response system
+       * ID of the command set by the client, echoed on the responses to it, 0 if not set
        * </pre>
        *
        * <code>int64 ID = 1;</code>
@@ -762,7 +807,7 @@ public final class Messages {
       }
       /**
        * <pre>
-       * can be used in request-response system
+       * ID of the command set by the client, echoed on the responses to it, 0 if not set
        * </pre>
        *
        * <code>int64 ID = 1;</code>
@@ -1181,6 +1226,44 @@ public final class Messages {
         onChanged();;
         return commandMsgBuilder_;
       }
+
+      private long seq_ ;
+      /**
+       * <pre>
+       * sequence number of server messages kept for replay on session resume, 0 if not set
+       * </pre>
+       *
+       * <code>int64 seq = 5;</code>
+       */
+      public long getSeq() {
+        return seq_;
+      }
+      /**
+       * <pre>
+       * sequence number of server messages kept for replay on session resume, 0 if not set
+       * </pre>
+       *
+       * <code>int64 seq = 5;</code>
+       */
+      public Builder setSeq(long value) {
+        
+        seq_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <pre>
+       * sequence number of server messages kept for replay on session resume, 0 if not set
+       * </pre>
+       *
+       * <code>int64 seq = 5;</code>
+       */
+      public Builder clearSeq() {
+        
+        seq_ = 0L;
+        onChanged();
+        return this;
+      }
       @java.lang.Override
       public final Builder setUnknownFields(
           final com.google.protobuf.UnknownFieldSet unknownFields) {
@@ -3191,7 +3274,7 @@ public final class Messages {
         implements com.google.protobuf.ProtocolMessageEnum {
       /**
        * <pre>
-       * received only on server
+       * received on both ends, answered with PONG
        * </pre>
        *
        * <code>PING = 0;</code>
@@ -3241,12 +3324,20 @@ public final class Messages {
        * <code>CONFIG = 6;</code>
        */
       CONFIG(6),
+      /**
+       * <pre>
+       * received on client, marks the end of responses to the command with the same ID
+       * </pre>
+       *
+       * <code>DONE = 7;</code>
+       */
+      DONE(7),
       UNRECOGNIZED(-1),
       ;
 
       /**
        * <pre>
-       * received only on server
+       * received on both ends, answered with PONG
        * </pre>
        *
        * <code>PING = 0;</code>
@@ -3296,6 +3387,14 @@ public final class Messages {
        * <code>CONFIG = 6;</code>
        */
       public static final int CONFIG_VALUE = 6;
+      /**
+       * <pre>
+       * received on client, marks the end of responses to the command with the same ID
+       * </pre>
+       *
+       * <code>DONE = 7;</code>
+       */
+      public static final int DONE_VALUE = 7;
 
 
       public final int getNumber() {
@@ -3323,6 +3422,7 @@ public final class Messages {
           case 4: return SERVER_DENY;
           case 5: return CLIENT_DISCONNECT;
           case 6: return CONFIG;
+          case 7: return DONE;
           default: return null;
         }
       }
@@ -4123,26 +4223,26 @@ public final class Messages {
   static {
     java.lang.String[] descriptorData = {
       "\n\016messages.proto\022\027me.tooster.common.prot" +
-      "o\"\317\001\n\007Message\022\n\n\002ID\030\001 \001(\003\0229\n\ncontrolMsg\030" +
+      "o\"\334\001\n\007Message\022\n\n\002ID\030\001 \001(\003\0229\n\ncontrolMsg\030" +
       "\002 \001(\0132#.me.tooster.common.proto.ControlM" +
       "sgH\000\0227\n\tvisualMsg\030\003 \001(\0132\".me.tooster.com" +
       "mon.proto.VisualMsgH\000\0229\n\ncommandMsg\030\004 \001(" +
       "\0132#.me.tooster.common.proto.CommandMsgH\000" +
-      "B\t\n\007msgType\"\310\001\n\tVisualMsg\022\014\n\004from\030\001 \001(\t\022" +
-      "\n\n\002to\030\002 \001(\t\022\013\n\003msg\030\003 \001(\t\022;\n\007variant\030\004 \001(" +
-      "\0162*.me.tooster.common.proto.VisualMsg.Va" +
-      "riant\"W\n\007Variant\022\010\n\004CHAT\020\000\022\013\n\007INVALID\020\001\022" +
-      "\t\n\005ERROR\020\002\022\007\n\003TIP\020\003\022\013\n\007WARNING\020\004\022\n\n\006PROM" +
-      "PT\020\005\022\010\n\004INFO\020\006\"\035\n\nCommandMsg\022\017\n\007command\030" +
-      "\001 \001(\t\"\275\002\n\nControlMsg\0226\n\004code\030\001 \001(\0162(.me." +
-      "tooster.common.proto.ControlMsg.Code\022M\n\r" +
-      "configuration\030\002 \003(\01326.me.tooster.common." +
-      "proto.ControlMsg.ConfigurationEntry\0324\n\022C" +
-      "onfigurationEntry\022\013\n\003key\030\001 \001(\t\022\r\n\005value\030" +
-      "\002 \001(\t:\0028\001\"r\n\004Code\022\010\n\004PING\020\000\022\010\n\004PONG\020\001\022\020\n" +
-      "\014CLIENT_HELLO\020\002\022\020\n\014SERVER_HELLO\020\003\022\017\n\013SER" +
-      "VER_DENY\020\004\022\025\n\021CLIENT_DISCONNECT\020\005\022\n\n\006CON" +
-      "FIG\020\006b\006proto3"
+      "\022\013\n\003seq\030\005 \001(\003B\t\n\007msgType\"\310\001\n\tVisualMsg\022\014" +
+      "\n\004from\030\001 \001(\t\022\n\n\002to\030\002 \001(\t\022\013\n\003msg\030\003 \001(\t\022;\n" +
+      "\007variant\030\004 \001(\0162*.me.tooster.common.proto" +
+      ".VisualMsg.Variant\"W\n\007Variant\022\010\n\004CHAT\020\000\022" +
+      "\013\n\007INVALID\020\001\022\t\n\005ERROR\020\002\022\007\n\003TIP\020\003\022\013\n\007WARN" +
+      "ING\020\004\022\n\n\006PROMPT\020\005\022\010\n\004INFO\020\006\"\035\n\nCommandMs" +
+      "g\022\017\n\007command\030\001 \001(\t\"\307\002\n\nControlMsg\0226\n\004cod" +
+      "e\030\001 \001(\0162(.me.tooster.common.proto.Contro" +
+      "lMsg.Code\022M\n\rconfiguration\030\002 \003(\01326.me.to" +
+      "oster.common.proto.ControlMsg.Configurat" +
+      "ionEntry\0324\n\022ConfigurationEntry\022\013\n\003key\030\001 " +
+      "\001(\t\022\r\n\005value\030\002 \001(\t:\0028\001\"|\n\004Code\022\010\n\004PING\020\000" +
+      "\022\010\n\004PONG\020\001\022\020\n\014CLIENT_HELLO\020\002\022\020\n\014SERVER_H" +
+      "ELLO\020\003\022\017\n\013SERVER_DENY\020\004\022\025\n\021CLIENT_DISCON" +
+      "NECT\020\005\022\n\n\006CONFIG\020\006\022\010\n\004DONE\020\007b\006proto3"
     };
     descriptor = com.google.protobuf.Descriptors.FileDescriptor
       .internalBuildGeneratedFileFrom(descriptorData,
@@ -4153,7 +4253,7 @@ public final class Messages {
     internal_static_me_tooster_common_proto_Message_fieldAccessorTable = new
       com.google.protobuf.GeneratedMessageV3.FieldAccessorTable(
         internal_static_me_tooster_common_proto_Message_descriptor,
-        new java.lang.String[] { "ID", "ControlMsg", "VisualMsg", "CommandMsg", "MsgType", });
+        new java.lang.String[] { "ID", "ControlMsg", "VisualMsg", "CommandMsg", "Seq", "MsgType", });
     internal_static_me_tooster_common_proto_VisualMsg_descriptor =
       getDescriptor().getMessageTypes().get(1);
     internal_static_me_tooster_common_proto_VisualMsg_fieldAccessorTable = new
@@ -0,0 +1,25 @@
+package me.tooster.server;
+
+/**
+ * Transport of a single client connection, independent of the I/O engine serving it.
+ */
+interface Connection {
+
+    /**
+     * Schedules writing of the frames pending in the outbox. Frames are written asynchronously and all frames pending
+     * at the time of writing are coalesced into a single flush. Write errors close the connection.
+     *
+     * @param outbox outbox of the user owning this connection
+     */
+    void drain(Outbox outbox);
+
+    /**
+     * Closes the connection. Closing already closed connection does nothing.
+     */
+    void close();
+
+    /**
+     * @return true if connection wasn't closed yet
+     */
+    boolean isOpen();
+}
@@ -0,0 +1,113 @@
+package me.tooster.server;
+
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.IOException;
+
+import static me.tooster.common.proto.Messages.*;
+
+/**
+ * Message encoded once as a varint-delimited frame. Frames are immutable, so one frame can be queued for any number of
+ * users, which makes broadcasts cost a single protobuf encode instead of one per recipient.
+ * <p>
+ * Frames sent to a single user are stamped with the ID of the command they respond to and with the user's sequence
+ * number for replay. Stamping appends the fields to the encoded message, which protobuf merges into the message on
+ * parsing, so a broadcast is still encoded once and only copied per recipient.
+ */
+final class Frame {
+    final byte[]  bytes;      // same bytes as Message.writeDelimitedTo() would write
+    final boolean droppable;  // CHAT and INFO visual messages can be dropped for slow consumers
+    final boolean replayable; // all but control messages, which belong to a single connection, and DONE
+    final long    id;         // ID of the command the message responds to, 0 if it isn't a response
+    final long    seq;        // sequence number of stamped frame, 0 if frame isn't stamped
+    private final int bodyOffset; // length of the varint size prefix
+
+    private Frame(byte[] bytes, int bodyOffset, boolean droppable, boolean replayable, long id, long seq) {
+        this.bytes = bytes;
+        this.bodyOffset = bodyOffset;
+        this.droppable = droppable;
+        this.replayable = replayable;
+        this.id = id;
+        this.seq = seq;
+    }
+
+    /**
+     * Builds and encodes message from it's subtype builder.
+     *
+     * @param message builder of ControlMsg, CommandMsg or VisualMsg
+     * @return encoded frame
+     * @throws IllegalArgumentException for other message types
+     */
+    static Frame of(Object message) {
+        var msg = Message.newBuilder();
+        if (message instanceof ControlMsg.Builder)
+            msg.setControlMsg(((ControlMsg.Builder) message).build());
+        else if (message instanceof CommandMsg.Builder)
+            msg.setCommandMsg(((CommandMsg.Builder) message).build());
+        else if (message instanceof VisualMsg.Builder)
+            msg.setVisualMsg(((VisualMsg.Builder) message).build());
+        else
+            throw new IllegalArgumentException("Invalid message type");
+        return of(msg.build());
+    }
+
+    /**
+     * Encodes message as a varint-delimited frame.
+     *
+     * @param msg message to encode
+     * @return encoded frame
+     */
+    static Frame of(Message msg) {
+        int size = msg.getSerializedSize();
+        int bodyOffset = CodedOutputStream.computeUInt32SizeNoTag(size);
+        byte[] bytes = new byte[bodyOffset + size];
+        try {
+            CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+            out.writeUInt32NoTag(size);
+            msg.writeTo(out);
+            out.checkNoSpaceLeft();
+        } catch (IOException e) { // writing to array can fail only on size mismatch
+            throw new IllegalStateException(e);
+        }
+        boolean droppable = msg.getMsgTypeCase() == Message.MsgTypeCase.VISUALMSG
+                && (msg.getVisualMsg().getVariant() == VisualMsg.Variant.CHAT
+                || msg.getVisualMsg().getVariant() == VisualMsg.Variant.INFO);
+        boolean replayable = msg.getMsgTypeCase() != Message.MsgTypeCase.CONTROLMSG
+                || msg.getControlMsg().getCode() == ControlMsg.Code.DONE;
+        return new Frame(bytes, bodyOffset, droppable, replayable, msg.getID(), msg.getSeq());
+    }
+
+    /**
+     * Copies the frame setting the command ID, without encoding the message again.
+     *
+     * @param id ID of the command the message responds to
+     * @return stamped frame
+     */
+    Frame withID(long id) { return stamp(Message.ID_FIELD_NUMBER, id); }
+
+    /**
+     * Copies the frame setting the sequence number, without encoding the message again.
+     *
+     * @param seq sequence number
+     * @return stamped frame
+     */
+    Frame withSeq(long seq) { return stamp(Message.SEQ_FIELD_NUMBER, seq); }
+
+    private Frame stamp(int field, long value) {
+        int bodySize = bytes.length - bodyOffset;
+        int size = bodySize + CodedOutputStream.computeInt64Size(field, value);
+        int offset = CodedOutputStream.computeUInt32SizeNoTag(size);
+        byte[] stamped = new byte[offset + size];
+        try {
+            CodedOutputStream out = CodedOutputStream.newInstance(stamped);
+            out.writeUInt32NoTag(size);
+            out.writeRawBytes(bytes, bodyOffset, bodySize);
+            out.writeInt64(field, value); // last occurrence of a field wins when parsing
+            out.checkNoSpaceLeft();
+        } catch (IOException e) { // writing to array can fail only on size mismatch
+            throw new IllegalStateException(e);
+        }
+        return new Frame(stamped, offset, droppable, replayable,
+                field == Message.ID_FIELD_NUMBER ? value : id, field == Message.SEQ_FIELD_NUMBER ? value : seq);
+    }
+}
@@ -1,36 +1,48 @@
 package me.tooster.server;
 
 
+import me.tooster.MTG.MTGCommand;
 import me.tooster.MTG.MTGStateMachine;
 import me.tooster.common.ChatRoom;
+import me.tooster.common.Command;
 import me.tooster.common.Formatter;
 import me.tooster.common.proto.Messages;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
- * Hub manages connected users and
+ * Hub manages connected users and the game they play. Hubs are kept in the {@link HubRegistry}.
+ * The game is driven only by tasks in the hub's {@link Mailbox}, so it never runs on I/O threads.
  */
 public class Hub implements ChatRoom<User> {
 
-    public final Map<Long, User> users;// users connected to session
-    public       Integer         userSlots;
-    public       MTGStateMachine fsm;
+    public final  String          name;
+    public final  Map<Long, User> users;// users connected to session
+    public        Integer         userSlots;
+    public        MTGStateMachine fsm;
+    private final ReentrantLock   lock = new ReentrantLock(); // guards joining and leaving
+    private final Mailbox         mailbox;
+    private       boolean         closed; // set once the hub is empty and removed from the registry
 
-    private Hub() {
-        users = Collections.synchronizedMap(new HashMap<>(2));
+    private Hub(String name) {
+        this.name = name;
+        mailbox = new Mailbox(name);
+        users = new ConcurrentHashMap<>(2);
         userSlots = 2;
     }
 
     /**
      * Static factory method to make new hubs
      *
-     * @param slots
-     * @return
+     * @param name  name of the hub
+     * @param slots number of users in the hub
+     * @return new hub with started state machine
      */
-    public static Hub makeHub(int slots) {
-        Hub hub = new Hub();
+    public static Hub makeHub(String name, int slots) {
+        Hub hub = new Hub(name);
         hub.userSlots = slots;
         hub.fsm = new MTGStateMachine(hub, slots);
         hub.fsm.start();
@@ -45,41 +57,120 @@ public class Hub implements ChatRoom<User> {
      * Sends welcome message to user
      *
      * @param user user to add
-     * @return returns true if player was added to the hub and false otherwise
+     * @return returns true if player was added to the hub and false if hub is full or closed
      */
-    synchronized boolean addUser(User user) {
-        if (users.size() == userSlots || users.containsKey(user.serverTag)) return false;
-        users.put(user.serverTag, user);
-        user.hub = this;
-        broadcast("%s joined the hub. %s", user.toString(), Formatter.formatProgress(users.size(), userSlots));
-        fsm.tryAddUser(user); // TODO: add to waiting queue if tryAddUser was a fail
-        return true;
+    boolean addUser(User user) {
+        lock.lock();
+        try {
+            if (closed || users.size() >= userSlots || users.containsKey(user.serverTag)) return false;
+            users.put(user.serverTag, user);
+            user.hub = this;
+            broadcast("%s joined the hub '%s'. %s", user.toString(), name, Formatter.formatProgress(users.size(), userSlots));
+            execute(() -> fsm.tryAddUser(user));
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized void removeUser(User user) {
-        users.remove(user.serverTag);
-        user.hub = null;
-        fsm.removeUser(user);
-        broadcast("%s left the hub. %s", user.toString(), Formatter.formatProgress(users.size(), userSlots));
+    /**
+     * Removes user from the hub. Clears user's hub reference unless he already joined another hub.
+     *
+     * @param user user to remove
+     */
+    void removeUser(User user) {
+        lock.lock();
+        try {
+            users.remove(user.serverTag);
+            if (user.hub == this) user.hub = null;
+            execute(() -> fsm.removeUser(user));
+            broadcast("%s left the hub. %s", user.toString(), Formatter.formatProgress(users.size(), userSlots));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the task in the hub's mailbox. Tasks of a hub run one at a time in order of submission.
+     *
+     * @param task task to run
+     */
+    public void execute(Runnable task) { mailbox.execute(task); }
+
+    /**
+     * Queues the command for the hub's state machine. Commands are skipped if user leaves the hub before they are
+     * processed.
+     *
+     * @param command command compiled by controller of a user in this hub
+     */
+    void process(Command.Compiled<MTGCommand> command) {
+        User user = (User) command.controller.owner;
+        execute(() -> {
+            if (user.hub != this) return;
+            try {
+                fsm.process(command);
+            } catch (Command.CommandDisabledException e) {
+                user.transmit(Messages.VisualMsg.newBuilder()
+                        .setVariant(Messages.VisualMsg.Variant.ERROR)
+                        .setMsg(e.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Closes the hub if nobody is in it. Closed hub doesn't accept users anymore.
+     *
+     * @return true if hub was empty and got closed by this call
+     */
+    boolean closeIfEmpty() {
+        lock.lock();
+        try {
+            if (closed || !users.isEmpty()) return false;
+            closed = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if hub was closed
+     */
+    boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if all user slots are taken
+     */
+    boolean isFull() { return users.size() >= userSlots; }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s %s", name, Formatter.formatProgress(users.size(), userSlots),
+                fsm.getCurrentState() == MTGStateMachine.State.GAME_PREPARE ? "waiting for players" : "in game");
     }
 
     @Override
     public void broadcast(String format, Object... args) {
-        synchronized (users) {
-            users.values().forEach(u -> u.transmit(Messages.VisualMsg.newBuilder()
-                    .setFrom("HUB")
-                    .setTo("HUB")
-                    .setMsg(String.format(format, (Object[]) args))));
-        }
+        Frame frame = Frame.of(Messages.VisualMsg.newBuilder() // encoded once for all the users
+                .setFrom("HUB")
+                .setTo("HUB")
+                .setMsg(String.format(format, args)));
+        users.values().forEach(u -> u.transmit(frame));
     }
 
     @Override
     public void shout(User user, String format, Object... args) {
-        synchronized (users) {
-            users.values().forEach(u -> u.transmit(Messages.VisualMsg.newBuilder()
-                    .setFrom(user.toString())
-                    .setTo("HUB")
-                    .setMsg(String.format(format, (Object[]) args))));
-        }
+        Frame frame = Frame.of(Messages.VisualMsg.newBuilder()
+                .setFrom(user.toString())
+                .setTo("HUB")
+                .setMsg(String.format(format, args)));
+        users.values().forEach(u -> u.transmit(frame));
     }
 }
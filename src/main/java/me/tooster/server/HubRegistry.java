@@ -0,0 +1,127 @@
+package me.tooster.server;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of named hubs on the server. Hubs are created on demand when users join them and are removed as soon as the
+ * last user leaves. Any thread can move users between hubs.
+ */
+class HubRegistry {
+
+    /** number of players in a hub, set with -Dmtg.hub.slots */
+    static final int HUB_SLOTS = Integer.getInteger("mtg.hub.slots", 2);
+
+    private final ConcurrentMap<String, Hub> hubs   = new ConcurrentHashMap<>();
+    private final AtomicLong                 nextId = new AtomicLong(0); // for names of hubs created automatically
+
+    /**
+     * @param name name of the hub
+     * @return hub with given name or null if it doesn't exist
+     */
+    Hub get(String name) { return hubs.get(name); }
+
+    /**
+     * @return live view of all the hubs
+     */
+    Collection<Hub> hubs() { return hubs.values(); }
+
+    /**
+     * Result of joining a hub.
+     */
+    enum JoinResult {JOINED, ALREADY_IN, FULL, DISCONNECTED}
+
+    /**
+     * Moves user to the hub with given name, creating the hub if it doesn't exist.
+     * User stays in his current hub if the target hub is full. Hub created for the user is collected if he doesn't
+     * join it.
+     *
+     * @param user user to move
+     * @param name name of the hub to join
+     * @return JOINED if user joined the hub, ALREADY_IN if he already is in it, FULL if it is full and DISCONNECTED if
+     * the user disconnected meanwhile
+     */
+    JoinResult join(User user, String name) {
+        user.hubLock.lock(); // user's hub can't change while joining
+        try {
+            while (true) {
+                if (user.isDisconnected()) return JoinResult.DISCONNECTED;
+                Hub hub = hubs.computeIfAbsent(name, n -> Hub.makeHub(n, HUB_SLOTS));
+                if (hub == user.hub) return JoinResult.ALREADY_IN;
+                if (move(user, user.hub, hub)) return JoinResult.JOINED;
+                collect(hub); // might have been created for this user
+                if (!hub.isClosed()) return JoinResult.FULL;
+                // hub was collected between lookup and joining or the user disconnected, check again
+            }
+        } finally {
+            user.hubLock.unlock();
+        }
+    }
+
+    /**
+     * Moves user from the hub to another hub or to the lobby. The slot in the target hub is taken before the user
+     * leaves the hub, so he is always in one of them and stays where he was if the target is full or closed. Moves
+     * of a user are serialized, so he is never in two hubs, and a disconnected user can't join any hub.
+     *
+     * @param user user to move
+     * @param from hub the user must be in, null for the lobby
+     * @param to   hub to move the user to, null for the lobby
+     * @return true if user was moved, false if he isn't in the hub anymore or the target is full or closed
+     */
+    boolean move(User user, Hub from, Hub to) {
+        user.hubLock.lock();
+        try {
+            if (user.hub != from) return false; // moved meanwhile
+            if (to != null && (user.isDisconnected() || !to.addUser(user))) return false;
+            if (from != null) {
+                from.removeUser(user);
+                collect(from);
+            }
+            return true;
+        } finally {
+            user.hubLock.unlock();
+        }
+    }
+
+    /**
+     * Creates new empty hub with unique generated name.
+     *
+     * @return registered hub
+     */
+    Hub create() {
+        while (true) {
+            Hub hub = Hub.makeHub("hub-" + nextId.incrementAndGet(), HUB_SLOTS);
+            if (hubs.putIfAbsent(hub.name, hub) == null) return hub;
+            hub.fsm.stop(); // name taken by user created hub
+        }
+    }
+
+    /**
+     * Removes user from his hub and collects the hub if it is empty. Does nothing for users without a hub.
+     *
+     * @param user user leaving his hub
+     */
+    void leave(User user) {
+        user.hubLock.lock(); // user can't be moved between reading his hub and leaving it
+        try {
+            move(user, user.hub, null);
+        } finally {
+            user.hubLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the hub from registry if it is empty.
+     *
+     * @param hub hub to check
+     */
+    void collect(Hub hub) {
+        if (hub.closeIfEmpty()) {
+            hubs.remove(hub.name, hub);
+            hub.execute(hub.fsm::stop);
+            Server.LOGGER.fine("Hub '" + hub.name + "' removed.");
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package me.tooster.server;
+
+/**
+ * Immutable identity of a user: his unique tag, nick and the <code>nick#0001</code> name shown to others. The name is
+ * formatted once, so broadcasts, logs and lookups can use it freely. Users get a new identity when their nick changes.
+ */
+final class Identity {
+    final long   tag;
+    final String nick;
+    final String name; // nick#tag
+
+    /**
+     * Use {@link IdentityService#identify(long, String)} to create identities.
+     */
+    Identity(long tag, String nick, String name) {
+        this.tag = tag;
+        this.nick = nick;
+        this.name = name;
+    }
+
+    @Override
+    public String toString() { return name; }
+}
@@ -0,0 +1,31 @@
+package me.tooster.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Issues unique tags to connections and identities to users. Tags are issued atomically, so any thread accepting
+ * connections can take them. Shared by the whole server, so hubs, the user registry and logs see the same names.
+ */
+class IdentityService {
+
+    private final AtomicLong lastTag = new AtomicLong(0);
+
+    /**
+     * @return next unique tag in numerical order
+     */
+    long nextTag() { return lastTag.incrementAndGet(); }
+
+    /**
+     * Creates the identity of the user with given nick.
+     *
+     * @param tag  tag issued to the user
+     * @param nick nick of the user
+     * @return identity named <code>nick#tag</code>, tag padded to 4 digits
+     */
+    Identity identify(long tag, String nick) {
+        String digits = Long.toString(tag);
+        StringBuilder name = new StringBuilder(nick.length() + Math.max(digits.length(), 4) + 1).append(nick).append('#');
+        for (int i = digits.length(); i < 4; i++) name.append('0');
+        return new Identity(tag, nick, name.append(digits).toString());
+    }
+}
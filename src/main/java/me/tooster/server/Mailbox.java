@@ -0,0 +1,64 @@
+package me.tooster.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Serial executor running tasks one at a time in order of submission on a shared work-stealing pool. Each hub owns
+ * a mailbox, so the game of a single hub is processed sequentially while many hubs progress in parallel. Mailbox is
+ * scheduled on the pool only while it has pending tasks, so idle hubs cost no threads.
+ */
+class Mailbox implements Executor {
+
+    /** number of threads processing the mailboxes, set with -Dmtg.hub.threads */
+    static final int THREADS    = Integer.getInteger("mtg.hub.threads", Runtime.getRuntime().availableProcessors());
+    /** maximum number of tasks run in one go before the mailbox yields the thread to other mailboxes */
+    static final int THROUGHPUT = 64;
+
+    // async mode is FIFO for tasks that are never joined, which fits mailboxes better than the default LIFO
+    private static final ForkJoinPool POOL = new ForkJoinPool(THREADS, ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+            null, true);
+
+    private final String          name;
+    private final Queue<Runnable> tasks     = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean   scheduled = new AtomicBoolean(false); // mailbox is waiting in the pool or running
+
+    /**
+     * @param name name used in the logs
+     */
+    Mailbox(String name) { this.name = name; }
+
+    /**
+     * Queues the task. Tasks of the mailbox never run concurrently and run in order of submission. Task queued while
+     * processing a {@link Request} runs as part of it.
+     *
+     * @param task task to run
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(Request.propagate(task));
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true))
+            POOL.execute(this::run);
+    }
+
+    private void run() {
+        Runnable task;
+        for (int i = 0; i < THROUGHPUT && (task = tasks.poll()) != null; i++) {
+            try {
+                task.run();
+            } catch (RuntimeException e) { // one failed task mustn't stop the mailbox
+                Server.LOGGER.severe("Task in mailbox of '" + name + "' failed: " + e);
+                e.printStackTrace();
+            }
+        }
+        scheduled.set(false);
+        if (!tasks.isEmpty()) schedule(); // tasks left over or queued after the last poll
+    }
+}
@@ -0,0 +1,171 @@
+package me.tooster.server;
+
+import me.tooster.MTG.MTGCommand;
+import me.tooster.MTG.MTGStateMachine;
+import me.tooster.MTG.exceptions.DeckException;
+import me.tooster.common.Command.Compiled;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static me.tooster.MTG.MTGCommand.*;
+import static me.tooster.common.proto.Messages.VisualMsg;
+
+/**
+ * Matchmaking service pairing users from the lobby into fresh hubs. Users without a hub are in the lobby, where they can
+ * pick a deck and queue with <code>/ready</code>. Queued users are paired in batches on a scheduler tick, longest waiting
+ * first, so matching n users costs a single O(n log n) sort per tick instead of each user polling for an opponent.
+ */
+class Matchmaker {
+
+    /** period of the matchmaking tick in milliseconds, set with -Dmtg.matchmaking.tick */
+    static final int TICK_MS = Integer.getInteger("mtg.matchmaking.tick", 250);
+
+    private final HubRegistry      hubs;
+    private final Map<User, Long>  queued = new ConcurrentHashMap<>(); // user -> nanoTime of joining the queue
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param hubs registry to create hubs for matched users in
+     */
+    Matchmaker(HubRegistry hubs) { this.hubs = hubs; }
+
+    /**
+     * Starts the matchmaking tick on a dedicated daemon thread.
+     */
+    void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "matchmaker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Puts the user in the lobby. Sets up lobby commands and tells the user how to find a match. Does nothing if the
+     * user joined a hub meanwhile.
+     *
+     * @param user user without a hub
+     */
+    void enterLobby(User user) {
+        if (!user.changeCommands(null, commands -> {
+            commands.setMasked();
+            commands.setEnabled(DECK_SELECT, DECK_LIST, DECK_SHOW, READY);
+        })) return;
+        user.transmit(VisualMsg.newBuilder()
+                .setFrom("SERVER")
+                .setTo(user.toString())
+                .setMsg("Use '" + READY.mainAlias() + "' to find a match or '" + ServerCommand.JOIN.mainAlias()
+                        + " <hub>' to join a hub."));
+    }
+
+    /**
+     * Handles commands of users in the lobby. <code>/ready</code> toggles the user in the queue, the rest are deck
+     * commands.
+     *
+     * @param command enabled command compiled by controller of a user without a hub
+     */
+    void process(Compiled<MTGCommand> command) {
+        User user = (User) command.controller.owner;
+        if (command.cmd != READY) {
+            MTGStateMachine.processDeckCommand(command);
+            return;
+        }
+
+        if (queued.remove(user) != null) {
+            user.transmit(VisualMsg.newBuilder()
+                    .setFrom("SERVER")
+                    .setTo(user.toString())
+                    .setMsg("You left the matchmaking queue."));
+            return;
+        }
+        try {
+            ResourceManager.instance().getDeckModel(user.config.get("deck")); // only players with valid deck can queue
+        } catch (DeckException e) {
+            user.transmit(VisualMsg.newBuilder()
+                    .setVariant(VisualMsg.Variant.ERROR)
+                    .setMsg(e.getMessage()));
+            return;
+        }
+        queued.put(user, System.nanoTime());
+        user.transmit(VisualMsg.newBuilder()
+                .setFrom("SERVER")
+                .setTo(user.toString())
+                .setMsg("Looking for a match... Use '" + READY.mainAlias() + "' again to cancel."));
+    }
+
+    /**
+     * Removes user from the queue, for example when he disconnects or joins a hub.
+     *
+     * @param user user to remove
+     */
+    void cancel(User user) { queued.remove(user); }
+
+    /**
+     * @return number of users waiting for a match
+     */
+    int queueSize() { return queued.size(); }
+
+    /**
+     * Pairs the queued users longest waiting first. Odd user stays in the queue for the next tick.
+     */
+    private void tick() {
+        try {
+            if (queued.size() < HubRegistry.HUB_SLOTS) return;
+
+            List<Map.Entry<User, Long>> batch = new ArrayList<>(queued.entrySet());
+            batch.sort(Map.Entry.comparingByValue());
+
+            List<Map.Entry<User, Long>> match = new ArrayList<>(HubRegistry.HUB_SLOTS);
+            for (Map.Entry<User, Long> ticket : batch) {
+                if (!queued.remove(ticket.getKey(), ticket.getValue())) continue; // cancelled meanwhile
+                if (ticket.getKey().hub != null) continue; // joined a hub by himself
+                match.add(ticket);
+                if (match.size() == HubRegistry.HUB_SLOTS) {
+                    startMatch(match);
+                    match.clear();
+                }
+            }
+            match.forEach(ticket -> queued.putIfAbsent(ticket.getKey(), ticket.getValue())); // wait for the next tick
+        } catch (RuntimeException e) { // exception would cancel the tick
+            Server.LOGGER.severe("Matchmaking failed: " + e);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Moves matched users to a fresh hub and makes them ready to start the game. If any of them disconnected or joined
+     * another hub meanwhile, the match doesn't start and the rest go back to the lobby keeping their place in the queue.
+     */
+    private void startMatch(List<Map.Entry<User, Long>> match) {
+        Hub hub = hubs.create();
+        List<Map.Entry<User, Long>> joined = new ArrayList<>(match.size());
+        for (Map.Entry<User, Long> ticket : match)
+            if (hubs.move(ticket.getKey(), null, hub)) joined.add(ticket);
+
+        if (joined.size() == match.size()) {
+            for (Map.Entry<User, Long> ticket : joined)
+                hub.process(ticket.getKey().mtgCommandController.compile(READY));
+            Server.LOGGER.fine("Matched " + hub.users.values() + " in hub '" + hub.name + "'.");
+            return;
+        }
+        for (Map.Entry<User, Long> ticket : joined) {
+            User user = ticket.getKey();
+            if (!hubs.move(user, hub, null)) continue; // left the hub by himself
+            enterLobby(user);
+            queued.putIfAbsent(user, ticket.getValue());
+            user.transmit(VisualMsg.newBuilder()
+                    .setFrom("SERVER")
+                    .setTo(user.toString())
+                    .setMsg("Opponent left before the match started. Looking for another match... Use '"
+                            + READY.mainAlias() + "' again to cancel."));
+        }
+        hubs.collect(hub); // in case nobody joined
+    }
+}
@@ -0,0 +1,304 @@
+package me.tooster.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static me.tooster.common.proto.Messages.Message;
+
+/**
+ * Non-blocking connection engine. Accepted channels are spread over a small pool of reactor threads, each multiplexing
+ * its connections with own selector. Reactors frame the varint-delimited messages themselves and hand complete messages
+ * to the user owning the connection.
+ */
+class NioEngine {
+
+    static final int MAX_FRAME_SIZE = 1 << 20; // frames bigger than 1MB are a protocol violation
+
+    private static final int INCOMPLETE = -1; // varint isn't whole yet, decoded lengths are never negative
+
+    private final Reactor[] reactors;
+    private       int       nextReactor = 0;
+
+    /**
+     * @param ioThreads number of reactor threads serving the connections
+     * @throws IOException if selectors couldn't be opened
+     */
+    NioEngine(int ioThreads) throws IOException {
+        reactors = new Reactor[Math.max(1, ioThreads)];
+        for (int i = 0; i < reactors.length; i++) reactors[i] = new Reactor();
+    }
+
+    /**
+     * Accepts client connections on the port and distributes them between reactors. Blocks until interrupted.
+     *
+     * @param port port to listen on
+     * @throws IOException if server channel couldn't be opened
+     */
+    void serve(int port) throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port));
+            Server.LOGGER.info("Server started at port " + port + " with " + reactors.length + " I/O threads.");
+
+            for (int i = 0; i < reactors.length; i++) {
+                Thread t = new Thread(reactors[i], "nio-reactor-" + i);
+                t.setDaemon(true);
+                t.start();
+            }
+
+            Server.LOGGER.fine("Waiting for incoming client connections...");
+            while (!Thread.interrupted()) {
+                SocketChannel channel = server.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                reactors[nextReactor = (nextReactor + 1) % reactors.length].register(channel, Server.getInstance().identities.nextTag());
+            }
+        }
+    }
+
+    /**
+     * Reads varint32 from the buffer.
+     *
+     * @return decoded value or {@link #INCOMPLETE} if buffer doesn't contain the whole varint yet
+     * @throws SecurityException if varint is malformed or negative, which no length can be
+     */
+    private static int readVarint32(ByteBuffer buf) {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buf.hasRemaining()) return INCOMPLETE;
+            byte b = buf.get();
+            result |= (b & 0x7F) << shift;
+            if (shift == 28 && (b & 0x7F) > 0x07) break; // bits past 31, lengths fit in 31 bits
+            if (b >= 0) return result;
+        }
+        throw new SecurityException("Protocol violation - malformed frame length.");
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Single I/O thread with a selector. All channel operations happen on this thread.
+     */
+    private static class Reactor implements Runnable {
+        private final Selector        selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        Reactor() throws IOException { selector = Selector.open(); }
+
+        /**
+         * Runs the task on reactor's thread.
+         *
+         * @param task task to run
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        /**
+         * Registers new client channel in this reactor.
+         *
+         * @param channel non-blocking channel of accepted client
+         * @param tag     server tag for the connected user
+         */
+        void register(SocketChannel channel, long tag) {
+            execute(() -> {
+                var connection = new NioConnection(this, channel, tag);
+                try {
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (ClosedChannelException e) {
+                    connection.user.disconnect();
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.interrupted()) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    Server.LOGGER.severe("Selector failure: " + e.getMessage());
+                    return;
+                }
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) task.run();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    var connection = (NioConnection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) connection.read();
+                        if (key.isValid() && key.isWritable()) connection.write();
+                    } catch (CancelledKeyException ignored) { // closed concurrently
+                    } catch (IOException e) {
+                        Server.LOGGER.fine(connection.user + ": " + e.getMessage());
+                        connection.user.connectionLost(connection);
+                    } catch (SecurityException e) { // protocol violations end the session
+                        Server.LOGGER.fine(connection.user + ": " + e.getMessage());
+                        connection.user.disconnect();
+                    } catch (RuntimeException e) { // must not kill the reactor serving other connections
+                        Server.LOGGER.warning(connection.user + ": " + e);
+                        e.printStackTrace();
+                        connection.user.disconnect();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Connection multiplexed by a reactor. Frames from user's outbox are copied into an output buffer and written by the
+     * reactor's thread.
+     */
+    private static class NioConnection implements Connection {
+        private final Reactor       reactor;
+        private final SocketChannel channel;
+        private       User          user;   // replaced by the resumed user if client resumes a session
+        private       Outbox        outbox; // outbox of the user for this connection, set when it's drained
+        private       SelectionKey  key;
+        private       ByteBuffer    in             = ByteBuffer.allocate(4096);
+        private final ByteBuffer    out            = ByteBuffer.allocateDirect(64 * 1024);
+        private       ByteBuffer    frame          = null; // frame copied only partially into the output buffer
+        private final AtomicBoolean writeScheduled = new AtomicBoolean(false); // flush task queued or OP_WRITE set
+        private       boolean       handshaken     = false;
+
+        NioConnection(Reactor reactor, SocketChannel channel, long tag) {
+            this.reactor = reactor;
+            this.channel = channel;
+            this.user = new User(this, tag);
+        }
+
+        /**
+         * Reads available bytes and dispatches every complete message.
+         *
+         * @throws IOException for channel errors
+         */
+        void read() throws IOException {
+            if (channel.read(in) == -1) { // connection closed by client
+                user.connectionLost(this);
+                return;
+            }
+
+            in.flip();
+            int required = 0;
+            while (isOpen()) {
+                int frameStart = in.position();
+                int length = readVarint32(in);
+                if (length > MAX_FRAME_SIZE)
+                    throw new SecurityException("Protocol violation - frame of " + length + " bytes.");
+                if (length == INCOMPLETE || in.remaining() < length) { // incomplete frame, wait for more data
+                    required = length == INCOMPLETE ? 0 : in.position() - frameStart + length;
+                    in.position(frameStart);
+                    break;
+                }
+
+                Message msg = Message.parser().parseFrom(in.array(), in.arrayOffset() + in.position(), length);
+                in.position(in.position() + length);
+                dispatch(msg);
+            }
+            in.compact();
+
+            if (required > in.capacity()) { // grow the buffer to fit the whole frame
+                ByteBuffer bigger = ByteBuffer.allocate(required);
+                in.flip();
+                bigger.put(in);
+                in = bigger;
+            }
+        }
+
+        private void dispatch(Message msg) throws IOException {
+            if (handshaken) {
+                user.handleRemoteMessage(msg);
+            } else {
+                handshaken = true;
+                user = user.handshake(msg);
+            }
+        }
+
+        /**
+         * Writes frames pending in the outbox, as many at once as fit in the output buffer. If the socket buffer fills up,
+         * the rest is written once the channel becomes writable.
+         *
+         * @throws IOException for channel errors
+         */
+        void write() throws IOException {
+            try {
+                do {
+                    while (fill()) {
+                        out.flip();
+                        channel.write(out);
+                        boolean stalled = out.hasRemaining();
+                        out.compact();
+                        if (stalled) { // socket buffer full, wait for OP_WRITE
+                            outbox.writeStarted();
+                            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                            return;
+                        }
+                    }
+                    outbox.writeCompleted();
+                    key.interestOps(SelectionKey.OP_READ);
+                    writeScheduled.set(false);
+                } while (!outbox.isEmpty() && writeScheduled.compareAndSet(false, true)); // frames queued meanwhile
+            } catch (IOException | RuntimeException e) { // failed write isn't stalled, the deadline doesn't apply
+                outbox.writeCompleted();
+                writeScheduled.set(false);
+                throw e;
+            }
+        }
+
+        /**
+         * Copies pending frames into the output buffer until it is full or outbox is empty.
+         *
+         * @return true if output buffer has anything to write
+         */
+        private boolean fill() {
+            while (out.hasRemaining()) {
+                if (frame == null || !frame.hasRemaining()) {
+                    Frame next = outbox.poll();
+                    if (next == null) break;
+                    frame = ByteBuffer.wrap(next.bytes);
+                }
+                int n = Math.min(out.remaining(), frame.remaining());
+                out.put(frame.array(), frame.position(), n);
+                frame.position(frame.position() + n);
+            }
+            return out.position() > 0;
+        }
+
+        @Override
+        public void drain(Outbox outbox) {
+            if (writeScheduled.compareAndSet(false, true))
+                reactor.execute(() -> {
+                    this.outbox = outbox;
+                    try {
+                        if (key != null && key.isValid()) write();
+                    } catch (IOException e) {
+                        Server.LOGGER.fine(user + ": " + e.getMessage());
+                        user.connectionLost(this);
+                    }
+                });
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close(); // cancels the key as well
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public boolean isOpen() { return channel.isOpen(); }
+    }
+}
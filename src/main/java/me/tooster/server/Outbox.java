@@ -0,0 +1,189 @@
+package me.tooster.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue of outbound frames of a single user. Any thread can offer frames, the connection drains them coalescing
+ * pending frames into a single write.
+ * <p>
+ * Outbox guards against slow consumers. If buffered bytes exceed the high-water mark or a write doesn't complete before
+ * the deadline, the outbox trips and applies the {@link Policy}. The deadline is checked by a timer while a write is in
+ * progress, so a write stalled for good is noticed even if nothing else is sent to the user. Frames that can't be
+ * dropped disconnect the consumer when the outbox is full.
+ */
+class Outbox {
+
+    /** maximum number of frames waiting to be written, set with -Dmtg.outbox.capacity */
+    static final int    CAPACITY          = Integer.getInteger("mtg.outbox.capacity", 1024);
+    /** maximum number of bytes waiting to be written before the outbox trips, set with -Dmtg.outbox.highWater */
+    static final int    HIGH_WATER_BYTES  = Integer.getInteger("mtg.outbox.highWater", 256 * 1024);
+    /** maximum time a started write can take before the outbox trips, set with -Dmtg.outbox.writeDeadline */
+    static final int    WRITE_DEADLINE_MS = Integer.getInteger("mtg.outbox.writeDeadline", 10_000);
+    /** what to do with slow consumers, set with -Dmtg.outbox.policy=drop|disconnect */
+    static final Policy POLICY            = Policy.valueOf(System.getProperty("mtg.outbox.policy", "drop").toUpperCase());
+
+    /** number of times any outbox tripped since server start */
+    static final AtomicLong TOTAL_TRIPS = new AtomicLong(0);
+
+    /**
+     * Policy applied to the slow consumer after the outbox trips.
+     */
+    enum Policy {
+        DROP,      // drop droppable frames (CHAT and INFO visual messages) until the consumer catches up
+        DISCONNECT // disconnect the consumer
+    }
+
+    /**
+     * Result of offering a frame.
+     */
+    enum Result {QUEUED, DROPPED, DISCONNECT}
+
+    private final User          owner;
+    private final Queue<Frame>  frames       = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth        = new AtomicInteger(0);
+    private final AtomicLong    pendingBytes = new AtomicLong(0);
+    private final AtomicLong    dropped      = new AtomicLong(0);
+    private final AtomicLong    trips        = new AtomicLong(0);
+    private final AtomicBoolean tripped      = new AtomicBoolean(false);
+    private final AtomicBoolean watched      = new AtomicBoolean(false); // deadline check is scheduled
+    private volatile long       writeStarted = 0; // nanoTime of the write in progress, 0 if connection isn't writing
+
+    /**
+     * @param owner user owning the outbox
+     */
+    Outbox(User owner) { this.owner = owner; }
+
+    /**
+     * Queues the frame. Droppable frame is dropped if outbox is full or it tripped with DROP policy. Missing the write
+     * deadline or a full outbox for a frame that can't be dropped always ends with disconnect.
+     *
+     * @param frame frame to queue
+     * @return QUEUED if frame was queued, DROPPED if it was dropped and DISCONNECT if consumer should be disconnected
+     */
+    Result offer(Frame frame) {
+        if (deadlineMissed()) return Result.DISCONNECT;
+
+        if (pendingBytes.get() + frame.bytes.length > HIGH_WATER_BYTES) {
+            trip(pendingBytes.get() + " bytes pending", POLICY);
+            if (POLICY == Policy.DISCONNECT) return Result.DISCONNECT;
+            if (frame.droppable) {
+                dropped.incrementAndGet();
+                return Result.DROPPED;
+            }
+        }
+
+        if (depth.incrementAndGet() > CAPACITY) {
+            depth.decrementAndGet();
+            if (!frame.droppable) { // client would miss the game state or the end of a response
+                trip(CAPACITY + " frames pending", Policy.DISCONNECT);
+                return Result.DISCONNECT;
+            }
+            dropped.incrementAndGet();
+            return Result.DROPPED;
+        }
+        pendingBytes.addAndGet(frame.bytes.length);
+        frames.add(frame);
+        return Result.QUEUED;
+    }
+
+    /**
+     * @return true if the write in progress missed the deadline, then the outbox is tripped
+     */
+    private boolean deadlineMissed() {
+        long started = writeStarted;
+        if (started == 0 || System.nanoTime() - started <= WRITE_DEADLINE_MS * 1_000_000L) return false;
+        trip("write deadline of " + WRITE_DEADLINE_MS + "ms missed", Policy.DISCONNECT);
+        return true;
+    }
+
+    /**
+     * Checks the deadline of the write in progress on the timer thread. Reschedules itself until the write completes
+     * or misses the deadline, then the owner is told to disconnect the consumer.
+     */
+    private void checkDeadline() {
+        if (deadlineMissed()) {
+            owner.writeStalled(this);
+            return;
+        }
+        long started = writeStarted;
+        if (started == 0) {
+            watched.set(false);
+            if (writeStarted == 0 || !watched.compareAndSet(false, true)) return; // no write or watched meanwhile
+            started = writeStarted;
+        }
+        long remainingNs = Math.max(0, started + WRITE_DEADLINE_MS * 1_000_000L - System.nanoTime());
+        Server.TIMERS.schedule(this::checkDeadline, TimeUnit.NANOSECONDS.toMillis(remainingNs) + 1,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Marks the outbox as tripped, counts it and logs it once until the consumer catches up.
+     *
+     * @param reason  why the outbox tripped
+     * @param applied policy applied to the consumer
+     */
+    private void trip(String reason, Policy applied) {
+        if (tripped.compareAndSet(false, true)) {
+            trips.incrementAndGet();
+            TOTAL_TRIPS.incrementAndGet();
+            Server.LOGGER.warning("Slow consumer " + owner + ": " + reason + ", applying " + applied + " policy.");
+        }
+    }
+
+    /**
+     * @return next frame to write or null if outbox is empty
+     */
+    Frame poll() {
+        Frame frame = frames.poll();
+        if (frame != null) {
+            depth.decrementAndGet();
+            if (pendingBytes.addAndGet(-frame.bytes.length) < HIGH_WATER_BYTES / 2) tripped.set(false); // caught up
+        }
+        return frame;
+    }
+
+    /**
+     * Called by connection when it starts a write that may block or stall. Repeated calls keep the first start time.
+     * Starts checking the deadline unless it's already checked.
+     */
+    void writeStarted() {
+        if (writeStarted == 0) writeStarted = System.nanoTime();
+        if (watched.compareAndSet(false, true))
+            Server.TIMERS.schedule(this::checkDeadline, WRITE_DEADLINE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Called by connection when everything it had to write was written.
+     */
+    void writeCompleted() { writeStarted = 0; }
+
+    /**
+     * @return true if there are no frames waiting
+     */
+    boolean isEmpty() { return frames.isEmpty(); }
+
+    /**
+     * @return number of frames waiting to be written
+     */
+    int depth() { return depth.get(); }
+
+    /**
+     * @return number of bytes waiting to be written
+     */
+    long pendingBytes() { return pendingBytes.get(); }
+
+    /**
+     * @return number of frames dropped because the outbox was full or tripped
+     */
+    long dropped() { return dropped.get(); }
+
+    /**
+     * @return number of times this outbox tripped
+     */
+    long trips() { return trips.get(); }
+}
@@ -0,0 +1,89 @@
+package me.tooster.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket limiting how often a user can issue commands. The bucket holds up to <code>burst</code> tokens and
+ * refills at <code>rate</code> tokens per second, each command takes one token and commands without a token are
+ * rejected.
+ * <p>
+ * The bucket is stored as a single timestamp, the time at which it will be full again, and is updated with one CAS, so
+ * it takes no locks and allocates nothing. A full bucket has the timestamp in the past, every command moves it
+ * 1/rate seconds into the future and a command is rejected if that would move it more than burst/rate seconds ahead.
+ */
+class RateLimiter {
+
+    /** chat commands per second, set with -Dmtg.limit.chat.rate, 0 disables the limit */
+    static final int CHAT_RATE  = Integer.getInteger("mtg.limit.chat.rate", 5);
+    /** chat commands that can be sent at once, set with -Dmtg.limit.chat.burst */
+    static final int CHAT_BURST = Integer.getInteger("mtg.limit.chat.burst", 10);
+    /** game commands per second, set with -Dmtg.limit.game.rate, 0 disables the limit */
+    static final int GAME_RATE  = Integer.getInteger("mtg.limit.game.rate", 20);
+    /** game commands that can be sent at once, set with -Dmtg.limit.game.burst */
+    static final int GAME_BURST = Integer.getInteger("mtg.limit.game.burst", 40);
+
+    /** number of commands rejected by any limiter since server start */
+    static final AtomicLong TOTAL_REJECTED = new AtomicLong(0);
+
+    private final long       intervalNanos; // time to refill a single token, 0 if unlimited
+    private final long       capacityNanos; // time to refill the whole bucket
+    private final AtomicLong fullAt;        // nanoTime at which the bucket is full
+    private final AtomicLong allowed  = new AtomicLong(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    /**
+     * @param rate  tokens refilled per second, 0 or less for no limit
+     * @param burst maximum number of tokens in the bucket, at least 1
+     */
+    RateLimiter(int rate, int burst) {
+        intervalNanos = rate > 0 ? 1_000_000_000L / rate : 0;
+        capacityNanos = intervalNanos * Math.max(burst, 1);
+        fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * @return limiter for chat commands configured with system properties
+     */
+    static RateLimiter chat() { return new RateLimiter(CHAT_RATE, CHAT_BURST); }
+
+    /**
+     * @return limiter for game commands configured with system properties
+     */
+    static RateLimiter game() { return new RateLimiter(GAME_RATE, GAME_BURST); }
+
+    /**
+     * Takes a token from the bucket.
+     *
+     * @return true if the command can be processed, false if it's over the limit
+     */
+    boolean tryAcquire() {
+        if (intervalNanos == 0) {
+            allowed.incrementAndGet();
+            return true;
+        }
+        long now = System.nanoTime();
+        while (true) {
+            long full = fullAt.get();
+            long next = (full - now > 0 ? full : now) + intervalNanos;
+            if (next - now > capacityNanos) {
+                rejected.incrementAndGet();
+                TOTAL_REJECTED.incrementAndGet();
+                return false;
+            }
+            if (fullAt.compareAndSet(full, next)) {
+                allowed.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return number of commands let through
+     */
+    long allowed() { return allowed.get(); }
+
+    /**
+     * @return number of commands rejected
+     */
+    long rejected() { return rejected.get(); }
+}
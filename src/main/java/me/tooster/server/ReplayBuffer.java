@@ -0,0 +1,60 @@
+package me.tooster.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ring buffer of the last frames sent to a user, replayed to the client resuming his session after the connection
+ * dropped. Every frame is stamped with the next sequence number of the user, client tells the number of the last
+ * message it received when resuming and gets everything after it.
+ * <p>
+ * Buffer is bounded by both the number of frames and their bytes, oldest frames are evicted first. Not thread safe,
+ * the user guards it with his session lock.
+ */
+class ReplayBuffer {
+
+    /** maximum number of frames kept for replay, set with -Dmtg.resume.buffer */
+    static final int CAPACITY       = Integer.getInteger("mtg.resume.buffer", 256);
+    /** maximum number of bytes of frames kept for replay, set with -Dmtg.resume.bufferBytes */
+    static final int CAPACITY_BYTES = Integer.getInteger("mtg.resume.bufferBytes", 64 * 1024);
+
+    private final ArrayDeque<Frame> frames  = new ArrayDeque<>();
+    private long                    lastSeq = 0; // sequence number of the last stamped frame
+    private long                    bytes   = 0;
+
+    /**
+     * Stamps the frame with the next sequence number and keeps it for replay.
+     *
+     * @param frame frame to send
+     * @return stamped frame
+     */
+    Frame add(Frame frame) {
+        Frame stamped = frame.withSeq(++lastSeq);
+        frames.addLast(stamped);
+        bytes += stamped.bytes.length;
+        while (frames.size() > CAPACITY || bytes > CAPACITY_BYTES && frames.size() > 1)
+            bytes -= frames.removeFirst().bytes.length;
+        return stamped;
+    }
+
+    /**
+     * @param ack sequence number of the last message received by the client
+     * @return frames sent after the message, oldest first
+     */
+    List<Frame> since(long ack) {
+        List<Frame> replayed = new ArrayList<>();
+        for (Frame frame : frames)
+            if (frame.seq > ack) replayed.add(frame);
+        return replayed;
+    }
+
+    /**
+     * @param ack sequence number of the last message received by the client
+     * @return number of messages sent after the message that were already evicted and can't be replayed
+     */
+    long missed(long ack) {
+        long firstSeq = frames.isEmpty() ? lastSeq + 1 : frames.peekFirst().seq;
+        return Math.max(0, firstSeq - Math.max(ack, 0) - 1);
+    }
+}
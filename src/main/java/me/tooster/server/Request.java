@@ -0,0 +1,77 @@
+package me.tooster.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static me.tooster.common.proto.Messages.*;
+
+/**
+ * Command of a user being processed, identified by the ID the client set on the CommandMsg. Messages transmitted to the
+ * user while the command is processed carry the same ID, so client can match responses with commands and send many
+ * commands without waiting for the previous ones.
+ * <p>
+ * Request is bound to the processing thread and follows the tasks queued in mailboxes meanwhile, so responses from the
+ * hub's mailbox are tagged too. Once the handler and all tasks queued for the request finish, the user is sent DONE
+ * with the ID, which marks the end of responses. Timers aren't followed, delayed actions aren't part of the command.
+ */
+final class Request {
+
+    private static final ThreadLocal<Request> CURRENT = new ThreadLocal<>();
+
+    private final User          user;
+    private final long          id;
+    private final AtomicInteger pending = new AtomicInteger(1); // handler and tasks that didn't finish yet
+
+    private Request(User user, long id) {
+        this.user = user;
+        this.id = id;
+    }
+
+    /**
+     * Runs the command handler as a request and sends DONE when it and all the tasks it queued finish.
+     *
+     * @param user    user who sent the command
+     * @param id      ID of the command, 0 if client didn't set it, then the handler just runs
+     * @param handler handler of the command
+     */
+    static void process(User user, long id, Runnable handler) {
+        if (id == 0) handler.run();
+        else new Request(user, id).run(handler);
+    }
+
+    /**
+     * @param recipient user the message is sent to
+     * @return ID of the request processed by current thread if it was sent by the recipient, 0 otherwise
+     */
+    static long idFor(User recipient) {
+        Request request = CURRENT.get();
+        return request != null && request.user == recipient ? request.id : 0;
+    }
+
+    /**
+     * Binds the task to the request processed by current thread, so the request isn't done before the task.
+     *
+     * @param task task queued for later
+     * @return task running as part of the request or the task itself if current thread isn't processing a request
+     */
+    static Runnable propagate(Runnable task) {
+        Request request = CURRENT.get();
+        if (request == null) return task;
+        request.pending.incrementAndGet();
+        return () -> request.run(task);
+    }
+
+    private void run(Runnable task) {
+        Request previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            task.run();
+        } finally {
+            CURRENT.set(previous);
+            if (pending.decrementAndGet() == 0)
+                user.transmit(Frame.of(Message.newBuilder()
+                        .setID(id)
+                        .setControlMsg(ControlMsg.newBuilder().setCode(ControlMsg.Code.DONE))
+                        .build()));
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package me.tooster.server;
 
 import me.tooster.common.ChatRoom;
+import me.tooster.common.TimerWheel;
 
+import java.io.IOException;
 import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import static me.tooster.common.proto.Messages.*;
@@ -31,43 +31,58 @@ public class Server implements ChatRoom<User> {
 
     //----------------------------------------------------------------------------------------------------------------------------
     int port = 62442;
-    Hub hub; // TODO: list of hubs and /join <hub> and /leave server commands
+    final HubRegistry hubs       = new HubRegistry();
+    final Matchmaker  matchmaker = new Matchmaker(hubs);
 
-    private static long            tag   = 0;
-    final          Map<Long, User> users = new ConcurrentHashMap<>();
+    /** I/O engine serving the clients: 'blocking' for thread per connection or 'nio' for selector based reactors */
+    static final String IO_ENGINE  = System.getProperty("mtg.io", "blocking");
+    /** number of reactor threads used by the 'nio' engine */
+    static final int    IO_THREADS = Integer.getInteger("mtg.io.threads", Runtime.getRuntime().availableProcessors());
+    /** threads serving connections of the 'blocking' engine, see {@link ThreadMode} */
+    static final ThreadMode THREADS = ThreadMode.fromProperty("mtg.threads");
+    /** timer for idle timeouts, keepalives and turn clocks, ticks every 100ms */
+    public static final TimerWheel TIMERS = new TimerWheel("timer-wheel", 100, TimeUnit.MILLISECONDS, 512);
+
+    final IdentityService identities = new IdentityService();
+    final UserRegistry    users      = new UserRegistry();
 
     /**
-     * @return next unique tag in numerical order
+     * Prepares the resources and starts serving the clients with configured I/O engine
      */
-    public static long nextTag() { return ++tag; }
+    private void start() {
+        try {
+            LOGGER.fine("Fetching data from resources...");
+            ResourceManager.instance().importAll(); // prefetch decks
+            matchmaker.start();
+
+            if (IO_ENGINE.equals("nio")) new NioEngine(IO_THREADS).serve(port);
+            else awaitClients();
+        } catch (Exception e) {
+            LOGGER.severe(e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+        LOGGER.info("Server stopped.");
+    }
 
     /**
-     * Listens for client connections and accepts/denies them
+     * Listens for client connections and accepts them, each connection is served by a dedicated thread
+     *
+     * @throws IOException if server socket couldn't be opened
      */
-    private void awaitClients() {
+    private void awaitClients() throws IOException {
         try (ServerSocket server = new ServerSocket(port)) {
-            LOGGER.info("Server started at port" + port + ".");
+            LOGGER.info("Server started at port " + port + " with " + THREADS.name().toLowerCase() + " threads.");
 
-            LOGGER.fine("Fetching data from resources...");
-            ResourceManager.instance().importAll(); // prefetch decks
-
-            LOGGER.fine("Initializing the hub.");
-            hub = Hub.makeHub(2);
             // listen for clients
             LOGGER.fine("Waiting for incoming client connections...");
             while (!Thread.interrupted()) {
-                Socket userSocket = server.accept();
-                User user = new User(userSocket, nextTag());
-
-                (user.listenRemoteThread = new Thread(user::listenRemote)).start();
+                var connection = new SocketConnection(server.accept());
+                User user = new User(connection, identities.nextTag());
 
+                THREADS.start(() -> connection.listen(user), "user-" + user.serverTag);
             }
-        } catch (Exception e) {
-            LOGGER.severe(e.getMessage());
-            e.printStackTrace();
-            System.exit(1);
         }
-        LOGGER.info("Server stopped.");
     }
 
     /**
@@ -76,41 +91,31 @@ public class Server implements ChatRoom<User> {
      * @param identity any of tag, nick or starting identity of player
      * @return returns user if exactly one user is found, null otherwise
      */
-    public User findUser(String identity) {
-        User u = null;
-        //return by tag
-        try { u = users.get(Long.parseLong(identity)); } catch (NumberFormatException ignored) {}
-        if (u != null) return u;
-        // return by name
-        var matching = users.values().stream().filter(id -> id.toString().startsWith(identity)).toArray();
-        if (matching.length != 1) return null;
-        return (User) matching[0];
-    }
+    public User findUser(String identity) { return users.find(identity); }
 
     @Override
     public void broadcast(String format, Object... args) {
-        synchronized (users) {
-            users.values().forEach(u -> u.transmit(VisualMsg.newBuilder()
-                    .setVariant(VisualMsg.Variant.CHAT)
-                    .setFrom("SERVER")
-                    .setTo("SERVER")
-                    .setMsg(String.format(format, args))));
-        }
+        Frame frame = Frame.of(VisualMsg.newBuilder() // encoded once for all the users
+                .setVariant(VisualMsg.Variant.CHAT)
+                .setFrom("SERVER")
+                .setTo("SERVER")
+                .setMsg(String.format(format, args)));
+        users.all().forEach(u -> u.transmit(frame));
     }
 
     @Override
     public void shout(User from, String format, Object... args) {
-        synchronized (users) {
-            users.values().forEach(u -> u.transmit(VisualMsg.newBuilder()
-                    .setVariant(VisualMsg.Variant.CHAT)
-                    .setFrom(from.toString())
-                    .setTo("SERVER")
-                    .setMsg(String.format(format, args))));
-        }
+        Frame frame = Frame.of(VisualMsg.newBuilder()
+                .setVariant(VisualMsg.Variant.CHAT)
+                .setFrom(from.toString())
+                .setTo("SERVER")
+                .setMsg(String.format(format, args)));
+        users.all().forEach(u -> u.transmit(frame));
     }
 
     //----------------------------------------------------------------------------------------------------------------------------
-    // main thread listening for connections and creating connection-per-client threads
+    // main thread starting the server, pass -Dmtg.io=nio to serve clients with non-blocking I/O engine
+    // or -Dmtg.threads=virtual to serve them with virtual threads in the blocking engine
     public static void main(String[] args) {
         if (args.length > 0) Server.getInstance().port = Integer.parseInt(args[0]);
 
@@ -119,7 +124,7 @@ public class Server implements ChatRoom<User> {
         //        LOGGER.addHandler(handlerObj);
         //        LOGGER.setLevel(Level.ALL);
 
-        new Thread(Server.getInstance()::awaitClients).start(); // start the server
+        new Thread(Server.getInstance()::start).start(); // start the server
     }
 
 }
\ No newline at end of file
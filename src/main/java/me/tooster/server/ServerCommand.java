@@ -13,7 +13,11 @@ enum ServerCommand implements Command {
     @Alias({"/m", "/w", "/whisper"}) @Help("/m <player> <msg> sends private message to player.") WHISPER,
     @Alias("/say") @Help("/say <msg> sends message to local hub chat.") SAY,
     @Alias({"/shout", "!"}) @Help("/shout <msg> sends message to server chat.") SHOUT,
-    @Alias({"/who"}) @Help("displays all the users on the server.") WHO,
+    @Alias({"/who"}) @Help("/who [page] displays the users on the server, page by page.") WHO,
+    @Alias("/join") @Help("/join <hub> joins the hub, creating it if it doesn't exist.") JOIN,
+    @Alias("/leave") @Help("leaves the current hub.") LEAVE,
+    @Alias("/hubs") @Help("displays all the hubs on the server.") HUBS,
+    @Alias("/stats") @Help("/stats [player] displays connection statistics of you [or the player].") STATS,
     ;
 
     public static final EnumSet<ServerCommand> commands = EnumSet.allOf(ServerCommand.class);
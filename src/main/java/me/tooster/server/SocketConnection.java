@@ -0,0 +1,97 @@
+package me.tooster.server;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static me.tooster.common.proto.Messages.Message;
+
+/**
+ * Blocking connection served by a dedicated thread listening on the socket. Outbound frames are written by a writer task
+ * scheduled only while the outbox has pending frames.
+ */
+class SocketConnection implements Connection {
+
+    private final Socket        socket;
+    private final InputStream   in;
+    private final OutputStream  out;
+    private final AtomicBoolean draining = new AtomicBoolean(false); // writer task is scheduled or running
+
+    /**
+     * @param socket accepted client socket
+     * @throws IOException for socket errors
+     */
+    SocketConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = socket.getInputStream();
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+    }
+
+    /**
+     * Handles remote input from client. Blocks until the connection is closed.
+     *
+     * @param user user created for this connection, replaced by the resumed user if client resumes a session
+     */
+    void listen(User user) {
+        try { // timeouts are enforced by the user, which closes the socket to unblock the reads
+            user = user.handshake(Message.parseDelimitedFrom(in)); // handshake must be on this thread so it won't block main server thread
+
+            // listening loop
+            Message msg;
+            while ((msg = Message.parseDelimitedFrom(in)) != null && !Thread.interrupted())
+                user.handleRemoteMessage(msg);
+
+        } catch (SecurityException e) { // protocol violations end the session
+            Server.LOGGER.fine(user.toString() + ": " + e.getMessage());
+            user.disconnect();
+        } catch (SocketException e) {
+            Server.LOGGER.fine(user.toString() + ": " + e.getMessage());
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            user.connectionLost(this);
+        }
+    }
+
+    @Override
+    public void drain(Outbox outbox) {
+        if (draining.compareAndSet(false, true))
+            Server.THREADS.executor().execute(() -> write(outbox));
+    }
+
+    /**
+     * Writes all pending frames with a single flush.
+     *
+     * @param outbox outbox to drain
+     */
+    private void write(Outbox outbox) {
+        try {
+            do {
+                outbox.writeStarted(); // socket writes block while client doesn't read
+                Frame frame;
+                while ((frame = outbox.poll()) != null) out.write(frame.bytes);
+                out.flush();
+                outbox.writeCompleted();
+                draining.set(false);
+            } while (!outbox.isEmpty() && draining.compareAndSet(false, true)); // frames queued meanwhile
+        } catch (IOException e) {
+            outbox.writeCompleted(); // nothing is being written anymore, so the deadline doesn't apply
+            draining.set(false);
+            Server.LOGGER.fine("Write failed: " + e.getMessage());
+            close(); // listening thread finalizes the disconnection
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close(); // unblocks the listening thread
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean isOpen() { return !socket.isClosed(); }
+}
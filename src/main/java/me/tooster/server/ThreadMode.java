@@ -0,0 +1,71 @@
+package me.tooster.server;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Kind of threads serving the connections. Virtual threads are cheap enough to hold one per connected client without
+ * tuning the stack size. They are looked up at runtime, so on JVMs without them the mode falls back to platform threads.
+ */
+enum ThreadMode {
+    PLATFORM, VIRTUAL;
+
+    private static final ThreadFactory VIRTUAL_FACTORY = virtualThreadFactory();
+
+    /**
+     * Reads the mode from system property, for example <code>-Dmtg.threads=virtual</code>.
+     *
+     * @param property name of system property
+     * @return the mode or PLATFORM if property is not set, invalid or virtual threads are not supported
+     */
+    static ThreadMode fromProperty(String property) {
+        String mode = System.getProperty(property, "platform").toUpperCase();
+        if (mode.equals(VIRTUAL.name())) {
+            if (VIRTUAL_FACTORY != null) return VIRTUAL;
+            Server.LOGGER.warning("Virtual threads are not supported by this JVM, using platform threads.");
+        } else if (!mode.equals(PLATFORM.name()))
+            Server.LOGGER.warning("Invalid thread mode '" + mode + "', using platform threads.");
+        return PLATFORM;
+    }
+
+    /**
+     * Starts new thread of this kind.
+     *
+     * @param task task to run
+     * @param name name of the thread
+     * @return started thread
+     */
+    Thread start(Runnable task, String name) {
+        Thread thread = this == VIRTUAL ? VIRTUAL_FACTORY.newThread(task) : new Thread(task);
+        thread.setName(name);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * @return executor running tasks on threads of this kind. Platform threads are pooled, virtual ones are not.
+     */
+    Executor executor() { return this == VIRTUAL ? task -> VIRTUAL_FACTORY.newThread(task).start() : PlatformPool.INSTANCE; }
+
+    private static class PlatformPool {
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return factory of virtual threads (<code>Thread.ofVirtual().factory()</code>) or null if JVM doesn't have them
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null; // older JVM or preview features disabled
+        }
+    }
+}
@@ -2,126 +2,250 @@ package me.tooster.server;
 
 import me.tooster.common.Command;
 import me.tooster.common.Formatter;
-import me.tooster.common.proto.Messages;
+import me.tooster.common.TimerWheel;
 import me.tooster.MTG.MTGCommand;
 
 import java.io.*;
-import java.net.Socket;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.security.SecureRandom;
+import java.util.Base64;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 import static me.tooster.server.ServerCommand.*;
 import static me.tooster.common.proto.Messages.*;
 
 /**
  * High level class representing user connected to the server
+ * <p>
+ * User outlives his connection. When the connection drops, the user is parked for {@link #RESUME_GRACE_MS} with his
+ * hub, game and player intact, and a client presenting the resume token from SERVER_HELLO takes over the session
+ * with a new connection. Messages sent meanwhile are kept in a {@link ReplayBuffer} and replayed after the last message
+ * the client received.
  */
 public class User {
 
-    private static final int TIMEOUT_CLIENT_HELLO_MS = 5_000; // timeout between connection established and CLIENT_HELLO
-    private static final int TIMEOUT_MSG_MS          = 0; //20_000; // timeout between messages from client
+    static final int TIMEOUT_CLIENT_HELLO_MS = 5_000; // timeout between connection established and CLIENT_HELLO
+    static final int TIMEOUT_MSG_MS          = 20_000; // timeout between messages from client
+    static final int KEEPALIVE_MS            = TIMEOUT_MSG_MS / 2; // idle time after which client is sent a PING
+    /** time the session is kept after the connection dropped, set with -Dmtg.resume.grace, 0 disables resuming */
+    static final int RESUME_GRACE_MS         = Integer.getInteger("mtg.resume.grace", 30_000);
 
-    //----------------------------------------------------------------------------------------------------------------------------
+    private static final SecureRandom TOKENS = new SecureRandom();
 
-    Thread listenRemoteThread;
+    //----------------------------------------------------------------------------------------------------------------------------
 
-    private final Socket                    socket;
-    private final InputStream               in;
-    private final OutputStream              out;
+    private volatile Connection             connection;   // replaced when session is resumed
+    private final AtomicBoolean             disconnected = new AtomicBoolean(false);
+    volatile      Outbox                    outbox       = new Outbox(this); // frames waiting to be written, one per connection
+    private final ReentrantLock             sessionLock  = new ReentrantLock(); // guards connection swaps, parking and replay
+    private final ReplayBuffer              replay       = RESUME_GRACE_MS > 0 ? new ReplayBuffer() : null;
+    private       boolean                   registered   = false; // handshake completed, guarded by session lock
+    private       boolean                   parked       = false; // connection lost, waiting for resume, guarded by session lock
+    private volatile String                 resumeToken;  // issued in SERVER_HELLO, null if resuming is disabled
+    private volatile TimerWheel.Timeout     graceTimeout;
     final         Controller<ServerCommand> serverCommandController;
     final public  Controller<MTGCommand>    mtgCommandController;
+    private final Router                    commandRouter; // routes input to MTG commands first, then to server commands
+    private final RateLimiter               chatLimiter  = RateLimiter.chat(); // SAY, SHOUT, WHISPER and plain chat
+    private final RateLimiter               gameLimiter  = RateLimiter.game(); // MTG commands
     public final  long                      serverTag;               // unique tag per server
     public final  Map<String, String>       config;
+    private volatile long                   lastActivity; // nanoTime of last message from client, 0 before handshake
+    private volatile TimerWheel.Timeout     activityTimeout;
+    private volatile Identity               identity; // refreshed when nick changes
 
-    public Hub hub;
+    public volatile Hub           hub;                           // null if user isn't in any hub
+    final           ReentrantLock hubLock = new ReentrantLock(); // serializes moves between hubs, see HubRegistry#move
 
     //----------------------------------------------------------------------------------------------------------------------------
 
     /**
-     * Creates new player on server with given socket he's connected to and unique server tag.
-     * Starts new thread listening for remote input from client.
+     * Creates new player on server with given connection and unique server tag.
+     * The I/O engine owning the connection is responsible for feeding the user with received messages.
      *
-     * @param socket    players connection
-     * @param serverTag tag assigned by the server
-     * @throws IOException for socket errors
+     * @param connection players connection
+     * @param serverTag  tag assigned by the server
      */
-    User(Socket socket, long serverTag) throws IOException {
+    User(Connection connection, long serverTag) {
 
-        this.socket = socket;
-        this.in = socket.getInputStream();
-        this.out = socket.getOutputStream();
+        this.connection = connection;
 
         this.serverTag = serverTag;
 
         serverCommandController = new Controller<>(ServerCommand.class, this);
-        serverCommandController.setEnabled(HELP, WHISPER, SAY, SHOUT, WHO);
-        serverCommandController.setMasked(HELP, WHISPER, SAY, SHOUT, WHO);
+        serverCommandController.setEnabled(HELP, WHISPER, SAY, SHOUT, WHO, STATS, JOIN, LEAVE, HUBS);
+        serverCommandController.setMasked(HELP, WHISPER, SAY, SHOUT, WHO, STATS, JOIN, LEAVE, HUBS);
 
         mtgCommandController = new Controller<>(MTGCommand.class, this);
+        commandRouter = new Router(mtgCommandController, serverCommandController);
 
         config = new ConcurrentHashMap<>() {{
             put("nick", "anon");
             put("fullControl", "true");
             put("deck", "default");
         }};
+        identity = Server.getInstance().identities.identify(serverTag, config.get("nick"));
+
+        activityTimeout = Server.TIMERS.schedule(() -> checkActivity(connection), TIMEOUT_CLIENT_HELLO_MS,
+                TimeUnit.MILLISECONDS);
     }
 
     /**
-     * This method performs handshake with the server.
+     * Enforces the timeouts of the protocol. Client that didn't send CLIENT_HELLO in time or was idle for longer than
+     * {@link #TIMEOUT_MSG_MS} is disconnected, client idle for {@link #KEEPALIVE_MS} is sent a PING.
+     * Runs on the timer thread and reschedules itself for the next deadline, so messages don't touch the timer.
+     * Checks stop when the connection is lost or replaced.
      *
-     * @throws IOException throws if handshake failed.
+     * @param connection connection that is checked
      */
-    void handshake() throws IOException {
-        socket.setSoTimeout(TIMEOUT_CLIENT_HELLO_MS); // 5 sec timeout for CLIENT_HELLO
-        Message msg = Message.parseDelimitedFrom(in);
+    private void checkActivity(Connection connection) {
+        if (disconnected.get() || connection != this.connection || !connection.isOpen()) return;
+        long idleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivity);
+        if (lastActivity == 0 || idleMs >= TIMEOUT_MSG_MS) {
+            Server.LOGGER.fine(toString() + ": timeout reached.");
+            connection.close();
+            Server.THREADS.executor().execute(() -> connectionLost(connection));
+            return;
+        }
+        long delayMs;
+        if (idleMs >= KEEPALIVE_MS) {
+            transmit(ControlMsg.newBuilder().setCode(ControlMsg.Code.PING));
+            delayMs = TIMEOUT_MSG_MS - idleMs;
+        } else delayMs = KEEPALIVE_MS - idleMs;
+        activityTimeout = Server.TIMERS.schedule(() -> checkActivity(connection), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This method performs server side of the handshake on the first message received from the client.
+     * On success the user is registered on the server and enters the matchmaking lobby.
+     * <p>
+     * CLIENT_HELLO with <code>resume</code> token resumes the session of a parked user instead. The connection then
+     * belongs to the resumed user and this user is discarded.
+     *
+     * @param msg first message received from the client, null if connection was closed before
+     * @return user owning the connection from now on, this user or the resumed one
+     * @throws SecurityException if first message wasn't a CLIENT_HELLO or the session can't be resumed
+     */
+    User handshake(Message msg) {
         // assert that first message is CONTROL, CLIENT_HELLO
-        if (msg.getMsgTypeCase() == Message.MsgTypeCase.CONTROLMSG || msg.getControlMsg().getCode() == ControlMsg.Code.CLIENT_HELLO) {
+        if (msg != null && msg.getMsgTypeCase() == Message.MsgTypeCase.CONTROLMSG
+                && msg.getControlMsg().getCode() == ControlMsg.Code.CLIENT_HELLO) {
             var receivedConfig = msg.getControlMsg().getConfigurationMap();
+            if (receivedConfig.containsKey("resume")) return resumeOther(receivedConfig);
             config.putAll(receivedConfig); // nick and others in future
-            transmit(ControlMsg.newBuilder()
-                    .setCode(ControlMsg.Code.SERVER_HELLO)
-                    .putConfiguration("identity", this.toString())); // transmit identity
+            refreshIdentity();
+            lastActivity = System.nanoTime();
+            if (replay != null) {
+                byte[] token = new byte[16];
+                TOKENS.nextBytes(token);
+                resumeToken = Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+            }
+            transmit(serverHello());
         } else {
             transmit(ControlMsg.newBuilder()
                     .setCode(ControlMsg.Code.SERVER_DENY)
                     .putConfiguration("details", "Didn't receive CLIENT_HELLO"));
             throw new SecurityException("Protocol violation - didn't receive CLIENT_HELLO.");
         }
-    }
 
-    /**
-     * Handles remote input from client and timeouts
-     */
-    void listenRemote() {
+        Server.getInstance().users.register(this);
+        sessionLock.lock();
         try {
+            registered = true;
+        } finally {
+            sessionLock.unlock();
+        }
+        Server.LOGGER.info("Client " + toString() + " connected.");
+        Server.getInstance().broadcast("%s joined the server.", toString());
 
-            handshake(); // handshake must be on this thread so it won't block main server thread
-
-            var users = Server.getInstance().users;
-            users.put(serverTag, this); // register in users map
-            Server.LOGGER.info("Client " + toString() + " connected.");
-            Server.getInstance().broadcast("%s joined the server.", toString());
-
-            Server.getInstance().hub.addUser(this);
+        Server.getInstance().matchmaker.enterLobby(this);
+        return this;
+    }
 
-            socket.setSoTimeout(TIMEOUT_MSG_MS);// 20 sec timeout, if client doesn't send the data in 20 sec, he is assumed dead
+    /**
+     * @return SERVER_HELLO with identity of the user and the resume token
+     */
+    private ControlMsg.Builder serverHello() {
+        var hello = ControlMsg.newBuilder()
+                .setCode(ControlMsg.Code.SERVER_HELLO)
+                .putConfiguration("identity", this.toString()); // transmit identity
+        if (resumeToken != null)
+            hello.putConfiguration("resume", resumeToken)
+                    .putConfiguration("grace", Integer.toString(RESUME_GRACE_MS));
+        return hello;
+    }
 
-            // listening loop
-            Message msg;
-            while ((msg = Message.parseDelimitedFrom(in)) != null && !Thread.interrupted())
-                handleRemoteMessage(msg);
+    /**
+     * Hands the connection of this, not yet registered user, over to the user whose session the client resumes.
+     *
+     * @param receivedConfig CLIENT_HELLO configuration with <code>resume</code> token and <code>ack</code>, sequence
+     *                       number of the last message the client received
+     * @return resumed user
+     * @throws SecurityException if there is no session with the token or it can't be resumed
+     */
+    private User resumeOther(Map<String, String> receivedConfig) {
+        long ack;
+        try {
+            ack = Long.parseLong(receivedConfig.getOrDefault("ack", "0"));
+        } catch (NumberFormatException e) {
+            ack = -1;
+        }
+        User resumed = Server.getInstance().users.resumable(receivedConfig.get("resume"));
+        if (ack < 0 || resumed == null || !resumed.resume(connection, ack)) {
+            transmit(ControlMsg.newBuilder()
+                    .setCode(ControlMsg.Code.SERVER_DENY)
+                    .putConfiguration("details", "Session expired."));
+            throw new SecurityException("Protocol violation - can't resume the session.");
+        }
+        disconnected.set(true); // this user never registered, so there is nothing to clean up
+        activityTimeout.cancel();
+        return resumed;
+    }
 
-        } catch (SocketTimeoutException ignored) { // timeout reached without any data from server
-            Server.LOGGER.fine(this.toString() + ": timeout reached.");
-        } catch (SocketException | SecurityException e) {
-            Server.LOGGER.fine(this.toString() + ": " + e.getMessage());
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Resumes the session on a new connection. The old connection is closed if server didn't notice it dropped yet.
+     * SERVER_HELLO is sent first, then the messages the client didn't receive.
+     *
+     * @param connection new connection of the client
+     * @param ack        sequence number of the last message the client received
+     * @return true if session was resumed, false if user was disconnected meanwhile
+     */
+    private boolean resume(Connection connection, long ack) {
+        Connection lost;
+        Outbox outbox;
+        long missed;
+        sessionLock.lock();
+        try {
+            if (disconnected.get() || !registered || replay == null) return false;
+            lost = this.connection;
+            this.connection = connection;
+            this.outbox = outbox = new Outbox(this); // old connection may still be draining the old outbox
+            parked = false;
+            if (graceTimeout != null) graceTimeout.cancel();
+            lastActivity = System.nanoTime();
+
+            outbox.offer(Frame.of(serverHello()));
+            for (Frame frame : replay.since(ack)) outbox.offer(frame);
+            missed = replay.missed(ack);
         } finally {
-            disconnect();
+            sessionLock.unlock();
         }
+        lost.close();
+        connection.drain(outbox);
+        activityTimeout = Server.TIMERS.schedule(() -> checkActivity(connection), KEEPALIVE_MS, TimeUnit.MILLISECONDS);
+
+        if (missed > 0)
+            transmit(VisualMsg.newBuilder()
+                    .setVariant(VisualMsg.Variant.WARNING)
+                    .setMsg(missed + " messages were lost while you were disconnected."));
+        Server.LOGGER.info("Client " + toString() + " resumed the session.");
+        Hub hub = this.hub;
+        if (hub != null) hub.broadcast("%s reconnected.", toString());
+        return true;
     }
 
     /**
@@ -130,7 +254,8 @@ public class User {
      * @param msg message received from the server
      * @throws IOException idk, if something happens or some other shit
      */
-    private void handleRemoteMessage(Message msg) throws IOException {
+    void handleRemoteMessage(Message msg) throws IOException {
+        lastActivity = System.nanoTime();
 
         switch (msg.getMsgTypeCase()) {
             case CONTROLMSG: { // client sent control message. Any invalid control message will result in connection abort
@@ -139,15 +264,19 @@ public class User {
                     case PING: // respond to ping
                         transmit(ControlMsg.newBuilder().setCode(ControlMsg.Code.PONG));
                         break;
+                    case PONG: // response to keepalive, activity is already noted
+                        break;
                     case CONFIG: // config sent later
                         Server.LOGGER.finest(String.format("#%s received config:\n%s", serverTag, msg.toString()));
                         if (receivedConfig.isEmpty()) {
                             transmit(VisualMsg.newBuilder().setFrom("SERVER").setTo(this.toString()).setMsg(config.toString()));
                         } else {
-                            var oldNick = this.toString();
+                            var oldIdentity = identity;
                             config.putAll(receivedConfig);
-                            if (!oldNick.equals(this.toString())) // if nick changed - inform all
-                                Server.getInstance().broadcast("%s is now %s", oldNick, toString());
+                            if (refreshIdentity()) { // if nick changed - inform all
+                                Server.getInstance().users.rename(this, oldIdentity.name);
+                                Server.getInstance().broadcast("%s is now %s", oldIdentity, identity);
+                            }
                         }
                         break;
                     case CLIENT_DISCONNECT: // handle disconnect cleanup work
@@ -162,166 +291,418 @@ public class User {
             }
 
             case COMMANDMSG: { // client sent command
+                String input = msg.getCommandMsg().getCommand();
+                Request.process(this, msg.getID(), () -> handleCommand(input));
+                break;
+            }
 
+            case MSGTYPE_NOT_SET: {
+                Server.LOGGER.warning("Received empty message while listening.");
+                break;
+            }
+        }
 
-                try {
-                    String input = msg.getCommandMsg().getCommand();
-                    Compiled mtgParsed = mtgCommandController.parse(input);
-                    Compiled parsed = serverCommandController.parse(input);
+    }
 
-                    if (mtgParsed.cmd != null && !mtgParsed.isEnabled())
-                        throw new Command.CommandDisabledException((Command) mtgParsed.cmd);
+    /**
+     * Routes the command to the handler, MTG commands to the hub or the lobby, server commands are handled here.
+     *
+     * @param input raw input of the command
+     */
+    private void handleCommand(String input) {
+        try {
+            Compiled<?> routed = commandRouter.route(input);
+
+            if (routed == null) { // not a command, default to '/say'
+                if (!overLimit(chatLimiter)) say(SAY, input.stripLeading());
+            } else if (routed.cmd instanceof MTGCommand) {
+                @SuppressWarnings("unchecked") var mtgCommand = (Compiled<MTGCommand>) routed;
+                if (overLimit(gameLimiter)) return;
+                Hub hub = this.hub; // user can leave the hub meanwhile
+                if (!mtgCommand.isEnabled())
+                    throw new Command.CommandDisabledException(mtgCommand.cmd);
+                if (hub == null) Server.getInstance().matchmaker.process(mtgCommand); // user is in the lobby
+                else hub.process(mtgCommand);
+            } else {
+                @SuppressWarnings("unchecked") var command = (Compiled<ServerCommand>) routed;
+                if (!command.isEnabled()) throw new Command.CommandDisabledException(command.cmd);
+
+                switch (command.cmd) {
+                    case SHOUT:
+                    case SAY: {
+                        if (!overLimit(chatLimiter)) say(command.cmd, command.rest(1));
+                        break;
+                    }
 
-                    if (mtgParsed.cmd != null) {
-                        hub.fsm.process(mtgParsed);
-                    } else {
-                        Compiled<ServerCommand> command = parsed;
-                        if (command.cmd == null) { // default to '/say'
-                            input = SAY.mainAlias() + " " + input;
-                            command = serverCommandController.parse(input); // parse again to SAY
+                    case WHISPER: {
+                        if (overLimit(chatLimiter)) break;
+                        if (command.argCount() < 3) { // if whisper doesn't have recipient and text specified, send usage
+                            transmit(VisualMsg.newBuilder()
+                                    .setVariant(VisualMsg.Variant.INVALID)
+                                    .setMsg(command.cmd.help()));
+                            return;
                         }
-                        if (!command.isEnabled()) throw new IllegalArgumentException();
-
-                        switch (command.cmd) {
-                            case SHOUT:
-                            case SAY: {
-                                if (command.args.length < 2) { // if single /say or /shout without text was received, send usage
-                                    transmit(VisualMsg.newBuilder()
-                                            .setVariant(VisualMsg.Variant.INVALID)
-                                            .setMsg(command.cmd.help()));
-                                    return;
-                                }
-                                // remove command from text and strip if it is shout
-                                var text = Formatter.removePart(0, input);
-
-                                // if say and hub exists -> say, otherwise shout to server
-                                if (command.cmd == SAY && hub != null) hub.shout(this, text);
-                                else Server.getInstance().shout(this, text);
-                                break;
-                            }
-
-                            case WHISPER: {
-                                if (command.args.length < 3) { // if whisper doesn't have recipient and text specified, send usage
-                                    transmit(VisualMsg.newBuilder()
-                                            .setVariant(VisualMsg.Variant.INVALID)
-                                            .setMsg(command.cmd.help()));
-                                    return;
-                                }
-                                // remove command and recipient from command
-                                var text = Formatter.removePart(0, Formatter.removePart(1, input));
-
-                                User target = Server.getInstance().findUser(command.args[1]);
-                                if (target == null || target == this)
-                                    transmit(VisualMsg.newBuilder()
-                                            .setVariant(VisualMsg.Variant.INVALID)
-                                            .setMsg("User is offline or too many matching recipients."));
-                                else {
-                                    var chat = VisualMsg.newBuilder()
-                                            .setVariant(VisualMsg.Variant.CHAT)
-                                            .setFrom(this.toString())
-                                            .setTo(target.toString())
-                                            .setMsg(text);
-                                    target.transmit(chat);
-                                    this.transmit(chat);
-                                }
-                                break;
-                            }
+                        var text = command.rest(2); // text after command and recipient
+
+                        User target = Server.getInstance().findUser(command.arg(1));
+                        if (target == null || target == this)
+                            transmit(VisualMsg.newBuilder()
+                                    .setVariant(VisualMsg.Variant.INVALID)
+                                    .setMsg("User is offline or too many matching recipients."));
+                        else {
+                            var chat = VisualMsg.newBuilder()
+                                    .setVariant(VisualMsg.Variant.CHAT)
+                                    .setFrom(this.toString())
+                                    .setTo(target.toString())
+                                    .setMsg(text);
+                            target.transmit(chat);
+                            this.transmit(chat);
+                        }
+                        break;
+                    }
 
-                            case HELP: {
-                                if (command.args.length > 1) { // help for specific command
-                                    var helpCmd = serverCommandController.parse(command.arg(1)).cmd;
-                                    if (helpCmd != null) {
-                                        transmit(VisualMsg.newBuilder()
-                                                .setVariant(VisualMsg.Variant.CHAT)
-                                                .setFrom("SERVER")
-                                                .setMsg(Command.help(helpCmd)));
-
-                                    } else {
-                                        var helpMtgCmd = mtgCommandController.parse(command.arg(1)).cmd;
-                                        transmit(VisualMsg.newBuilder()
-                                                .setVariant(helpMtgCmd == null || !helpMtgCmd.hasHelp() ? VisualMsg.Variant.INVALID
-                                                                                                        : VisualMsg.Variant.CHAT)
-                                                .setFrom("SERVER")
-                                                .setMsg(Command.help(helpCmd)));
-                                    }
-                                } else {// global help
-                                    transmit(VisualMsg.newBuilder()
-                                            .setFrom("SERVER")
-                                            .setMsg(String.join("\n", serverCommandController.enabledCommands.stream()
-                                                    .map(c -> Command.help(c)).toArray(String[]::new))));
-
-                                    transmit(VisualMsg.newBuilder()
-                                            .setFrom("HUB")
-                                            .setMsg(String.join("\n", mtgCommandController.enabledCommands.stream()
-                                                    .map(c -> Command.help(c)).toArray(String[]::new))));
-                                }
-                                break;
-                            }
+                    case HELP: {
+                        if (command.argCount() > 1) { // help for specific command
+                            var helpCmd = serverCommandController.parse(command.arg(1)).cmd;
+                            if (helpCmd != null) {
+                                transmit(VisualMsg.newBuilder()
+                                        .setVariant(VisualMsg.Variant.CHAT)
+                                        .setFrom("SERVER")
+                                        .setMsg(Command.help(helpCmd)));
 
-                            case WHO: {
+                            } else {
+                                var helpMtgCmd = mtgCommandController.parse(command.arg(1)).cmd;
                                 transmit(VisualMsg.newBuilder()
+                                        .setVariant(helpMtgCmd == null || !helpMtgCmd.hasHelp() ? VisualMsg.Variant.INVALID
+                                                                                                : VisualMsg.Variant.CHAT)
                                         .setFrom("SERVER")
-                                        .setMsg("Online users: " + String.join(", ",
-                                                Server.getInstance().users.values().stream().map(User::toString).toArray(String[]::new))));
+                                        .setMsg(Command.help(helpMtgCmd)));
                             }
+                        } else {// global help
+                            transmit(VisualMsg.newBuilder()
+                                    .setFrom("SERVER")
+                                    .setMsg(String.join("\n", serverCommandController.enabledCommands.stream()
+                                            .map(c -> Command.help(c)).toArray(String[]::new))));
+
+                            transmit(VisualMsg.newBuilder()
+                                    .setFrom("HUB")
+                                    .setMsg(String.join("\n", mtgCommandController.enabledCommands.stream()
+                                            .map(c -> Command.help(c)).toArray(String[]::new))));
                         }
+                        break;
+                    }
+
+                    case WHO: {
+                        var users = Server.getInstance().users;
+                        int page;
+                        try {
+                            page = command.argCount() > 1 ? Integer.parseInt(command.arg(1)) : 1;
+                        } catch (NumberFormatException e) {
+                            page = 0;
+                        }
+                        if (page < 1 || page > users.pages()) {
+                            transmit(VisualMsg.newBuilder()
+                                    .setVariant(VisualMsg.Variant.INVALID)
+                                    .setMsg("Page must be a number from 1 to " + users.pages() + "."));
+                            return;
+                        }
+                        transmit(VisualMsg.newBuilder()
+                                .setFrom("SERVER")
+                                .setMsg(String.format("Online users (page %d/%d, %d total): %s", page,
+                                        users.pages(), users.size(), String.join(", ", users.page(page)))));
+                        break;
+                    }
+
+                    case JOIN: {
+                        String name = command.arg(1);
+                        if (name.isBlank()) {
+                            transmit(VisualMsg.newBuilder()
+                                    .setVariant(VisualMsg.Variant.INVALID)
+                                    .setMsg(command.cmd.help()));
+                            return;
+                        }
+                        Server.getInstance().matchmaker.cancel(this);
+                        switch (Server.getInstance().hubs.join(this, name)) {
+                            case ALREADY_IN:
+                                transmit(VisualMsg.newBuilder()
+                                        .setVariant(VisualMsg.Variant.INVALID)
+                                        .setMsg("You are already in this hub."));
+                                break;
+                            case FULL:
+                                transmit(VisualMsg.newBuilder()
+                                        .setVariant(VisualMsg.Variant.INVALID)
+                                        .setMsg("Hub '" + name + "' is full."));
+                                break;
+                        }
+                        break;
+                    }
+
+                    case LEAVE: {
+                        if (hub == null)
+                            transmit(VisualMsg.newBuilder()
+                                    .setVariant(VisualMsg.Variant.INVALID)
+                                    .setMsg("You are not in a hub."));
+                        else {
+                            Server.getInstance().hubs.leave(this);
+                            Server.getInstance().matchmaker.enterLobby(this);
+                        }
+                        break;
+                    }
+
+                    case HUBS: {
+                        transmit(VisualMsg.newBuilder()
+                                .setFrom("SERVER")
+                                .setMsg("Hubs:\n" + Formatter.list(Server.getInstance().hubs.hubs().toArray())));
+                        break;
+                    }
+
+                    case STATS: {
+                        User target = command.argCount() > 1 ? Server.getInstance().findUser(command.arg(1)) : this;
+                        if (target == null)
+                            transmit(VisualMsg.newBuilder()
+                                    .setVariant(VisualMsg.Variant.INVALID)
+                                    .setMsg("User is offline or too many matching users."));
+                        else
+                            transmit(VisualMsg.newBuilder()
+                                    .setVariant(VisualMsg.Variant.INFO)
+                                    .setMsg(target.stats()));
+                        break;
                     }
-                } catch (CommandDisabledException e) {
-                    transmit(VisualMsg.newBuilder()
-                            .setVariant(VisualMsg.Variant.ERROR)
-                            .setMsg(e.getMessage()));
                 }
-                break;
             }
+        } catch (CommandDisabledException e) {
+            transmit(VisualMsg.newBuilder()
+                    .setVariant(VisualMsg.Variant.ERROR)
+                    .setMsg(e.getMessage()));
+        }
+    }
 
-            case MSGTYPE_NOT_SET: {
-                Server.LOGGER.warning("Received empty message while listening.");
+    /**
+     * Takes a token from the limiter, telling the user to slow down if there is none.
+     *
+     * @param limiter limiter of the command's kind
+     * @return true if the command is over the limit and mustn't be processed
+     */
+    private boolean overLimit(RateLimiter limiter) {
+        if (limiter.tryAcquire()) return false;
+        transmit(VisualMsg.newBuilder()
+                .setVariant(VisualMsg.Variant.INVALID)
+                .setMsg("You are sending commands too fast, slow down."));
+        return true;
+    }
+
+    /**
+     * Sends chat message to the hub or to the whole server, sending the usage back if there is no text.
+     *
+     * @param command SAY sends to the hub the user is in or to the server if user isn't in a hub, SHOUT to the server
+     * @param text    text of the message
+     */
+    private void say(ServerCommand command, String text) {
+        if (text.isEmpty()) { // if single /say or /shout without text was received, send usage
+            transmit(VisualMsg.newBuilder()
+                    .setVariant(VisualMsg.Variant.INVALID)
+                    .setMsg(command.help()));
+            return;
+        }
+        Hub hub = this.hub;
+        if (command == SAY && hub != null) hub.shout(this, text);
+        else Server.getInstance().shout(this, text);
+    }
+
+    /**
+     * Send message to remote client. Message is queued in user's outbox and written asynchronously, so slow client
+     * doesn't block the caller. Slow clients are handled according to {@link Outbox.Policy}.
+     *
+     * @param message message to send that is an instance of Message protobuf
+     */
+    public void transmit(Object message) { transmit(Frame.of(message)); }
+
+    /**
+     * Send already encoded message to remote client. Used to share a single frame between many recipients.
+     *
+     * @param frame frame to send
+     */
+    void transmit(Frame frame) {
+        long requestID = Request.idFor(this);
+        if (requestID != 0 && frame.id != requestID) frame = frame.withID(requestID); // response to the user's command
+        Connection connection;
+        Outbox outbox;
+        Outbox.Result result;
+        sessionLock.lock(); // frames are stamped, kept for replay and queued in the same order
+        try {
+            if (replay != null && frame.replayable) frame = replay.add(frame);
+            if (parked) return; // replayed when session is resumed
+            connection = this.connection;
+            outbox = this.outbox;
+            result = outbox.offer(frame);
+        } finally {
+            sessionLock.unlock();
+        }
+        switch (result) {
+            case QUEUED:
+                connection.drain(outbox);
+                break;
+            case DISCONNECT: // caller may be in the middle of a broadcast or game transition, so finalize elsewhere
+                connection.close();
+                Server.THREADS.executor().execute(this::disconnect);
                 break;
-            }
         }
+    }
 
+    /**
+     * Changes the user's game commands if he is still in the hub. Hubs and the lobby change the commands only this way,
+     * so a hub the user already left can't overwrite the commands set by his new hub or the lobby, and changes made
+     * by different mailboxes don't interleave.
+     *
+     * @param hub    hub changing the commands, null for the lobby
+     * @param change change of the commands
+     * @return true if the commands were changed, false if the user isn't in the hub
+     */
+    public boolean changeCommands(Hub hub, Consumer<Command.Controller<MTGCommand>> change) {
+        hubLock.lock();
+        try {
+            if (this.hub != hub) return false;
+            change.accept(mtgCommandController);
+            return true;
+        } finally {
+            hubLock.unlock();
+        }
     }
 
     /**
-     * Send message to remote client
+     * Called by the outbox when a write missed its deadline and nothing else was sent to notice it. Disconnects the
+     * user like {@link #transmit(Frame)} does for the slow consumer. Outboxes replaced by a resumed session are
+     * ignored, as their connection was already closed, and so are parked users, who wait for the resume instead.
      *
-     * @param message message to send that is an instance of Message protobuf
+     * @param stalled outbox whose write stalled
+     */
+    void writeStalled(Outbox stalled) {
+        Connection connection;
+        sessionLock.lock();
+        try {
+            if (stalled != outbox || parked || disconnected.get()) return;
+            connection = this.connection;
+        } finally {
+            sessionLock.unlock();
+        }
+        connection.close(); // unblocks the writer
+        Server.THREADS.executor().execute(this::disconnect);
+    }
+
+    /**
+     * Called by the I/O engine when the connection dropped. Registered user is parked for {@link #RESUME_GRACE_MS},
+     * keeping his hub and game, and disconnected only if the client doesn't resume the session in time. Connections
+     * the user doesn't own anymore are ignored. Safe to call multiple times and from any thread.
+     *
+     * @param lost connection that dropped
      */
-    public synchronized void transmit(Object message) {
+    void connectionLost(Connection lost) {
+        boolean park;
+        sessionLock.lock();
         try {
-            // build message from it's subtypes
-            var msg = Messages.Message.newBuilder();
-            if (message instanceof ControlMsg.Builder)
-                msg.setControlMsg(((ControlMsg.Builder) message).build()).build().writeDelimitedTo(out);
-            else if (message instanceof CommandMsg.Builder)
-                msg.setCommandMsg(((CommandMsg.Builder) message).build()).build().writeDelimitedTo(out);
-            else if (message instanceof VisualMsg.Builder)
-                msg.setVisualMsg(((VisualMsg.Builder) message).build()).build().writeDelimitedTo(out);
-            else
-                throw new IllegalArgumentException("Invalid message type");
-
-        } catch (IOException e) {
-            e.printStackTrace();
+            if (lost != connection || parked || disconnected.get()) return;
+            park = registered && replay != null;
+            if (park) {
+                parked = true;
+                graceTimeout = Server.TIMERS.schedule(() -> Server.THREADS.executor().execute(this::graceExpired),
+                        RESUME_GRACE_MS, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            sessionLock.unlock();
+        }
+        if (!park) {
+            disconnect();
+            return;
         }
+        lost.close();
+        Server.LOGGER.info("Client " + toString() + " lost connection, session kept for " + RESUME_GRACE_MS + "ms.");
+        Hub hub = this.hub;
+        if (hub != null) hub.broadcast("%s lost connection, waiting for him to reconnect.", toString());
     }
 
     /**
-     * finalizes user disconnection from server
+     * Disconnects the user if he is still parked when the grace period ends.
+     */
+    private void graceExpired() {
+        sessionLock.lock();
+        try {
+            if (!parked || disconnected.get()) return;
+            disconnected.set(true); // under the lock, so the session can't be resumed meanwhile
+        } finally {
+            sessionLock.unlock();
+        }
+        Server.LOGGER.fine(toString() + ": session wasn't resumed in time.");
+        cleanup();
+    }
+
+    /**
+     * finalizes user disconnection from server. Safe to call multiple times and from any thread.
      */
     public void disconnect() {
+        connection.close(); // close the connection and halt the listening
+        sessionLock.lock();
         try {
-            if (!socket.isClosed()) {
-                socket.close();
-                // updates game, sends status to other player etc.
-                if (hub != null) hub.removeUser(this);
-                Server.getInstance().users.remove(serverTag);
-                Server.getInstance().broadcast("%s disconnected.", toString());
-                Server.LOGGER.info("Client " + toString() + " disconnected.");
-            }
-            listenRemoteThread.interrupt(); // close the streams and halt the thread
-        } catch (IOException e) {
-            e.printStackTrace();
+            if (!disconnected.compareAndSet(false, true)) return;
+        } finally {
+            sessionLock.unlock();
         }
+        cleanup();
+    }
+
+    /**
+     * Releases everything the disconnected user held.
+     */
+    private void cleanup() {
+        connection.close();
+        activityTimeout.cancel();
+        if (graceTimeout != null) graceTimeout.cancel();
+
+        // updates game, sends status to other player etc.
+        Server.getInstance().matchmaker.cancel(this);
+        Server.getInstance().hubs.leave(this);
+        if (Server.getInstance().users.unregister(this))
+            Server.getInstance().broadcast("%s disconnected.", toString());
+        Server.LOGGER.info("Client " + toString() + " disconnected." +
+                (outbox.dropped() > 0 ? " Dropped " + outbox.dropped() + " outbound messages." : ""));
+    }
+
+    /**
+     * Issues new identity if the nick in config changed.
+     *
+     * @return true if the identity changed
+     */
+    private boolean refreshIdentity() {
+        String nick = config.get("nick");
+        if (nick.equals(identity.nick)) return false;
+        identity = Server.getInstance().identities.identify(serverTag, nick);
+        return true;
+    }
+
+    /**
+     * @return token for resuming the session issued in SERVER_HELLO, null if resuming is disabled
+     */
+    String resumeToken() { return resumeToken; }
+
+    /**
+     * @return identity of the user, changes when he changes his nick
+     */
+    Identity identity() { return identity; }
+
+    /**
+     * @return true if user was disconnected from the server
+     */
+    boolean isDisconnected() { return disconnected.get(); }
+
+    /**
+     * @return human readable statistics of user's connection and command limits
+     */
+    String stats() {
+        return String.format("%s\noutbox depth: %d (%d bytes)\ndropped messages: %d\nslow consumer trips: %d" +
+                             "\nchat commands: %d (%d over the limit)\ngame commands: %d (%d over the limit)" +
+                             "\nserver: %d slow consumer trips, %d commands over the limit",
+                this, outbox.depth(), outbox.pendingBytes(), outbox.dropped(), outbox.trips(),
+                chatLimiter.allowed(), chatLimiter.rejected(), gameLimiter.allowed(), gameLimiter.rejected(),
+                Outbox.TOTAL_TRIPS.get(), RateLimiter.TOTAL_REJECTED.get());
     }
 
     //----------------------------------------------------------------------------------------------------------------------------
@@ -333,6 +714,6 @@ public class User {
      * @return nick#tag string
      */
     @Override
-    public String toString() { return config.get("nick") + "#" + String.format("%04d", serverTag); }
+    public String toString() { return identity.name; }
 }
 
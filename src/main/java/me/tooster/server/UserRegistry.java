@@ -0,0 +1,130 @@
+package me.tooster.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Registry of users connected to the server, keyed by tag, with a sorted index of their <code>nick#tag</code> names.
+ * The index answers lookups by name prefix in O(log n) and lists users page by page in name order, so whispers and
+ * <code>/who</code> don't scan all the users. Users are also indexed by their resume token, so client reconnecting after
+ * the connection dropped gets back his session.
+ * <p>
+ * The index is kept up to date on register, unregister and {@link #rename(User, String)} after nick changes. All
+ * operations are lock free and safe to call from any thread.
+ */
+class UserRegistry {
+
+    /** number of users on a single <code>/who</code> page, set with -Dmtg.who.pageSize */
+    static final int PAGE_SIZE = Integer.getInteger("mtg.who.pageSize", 50);
+
+    private final Map<Long, User>            users   = new ConcurrentHashMap<>();
+    private final NavigableMap<String, User> byName  = new ConcurrentSkipListMap<>();
+    private final Map<String, User>          byToken = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the user under his tag and name.
+     *
+     * @param user user that completed the handshake
+     */
+    void register(User user) {
+        users.put(user.serverTag, user);
+        byName.put(user.toString(), user);
+        if (user.resumeToken() != null) byToken.put(user.resumeToken(), user);
+    }
+
+    /**
+     * Removes the user. Does nothing if user isn't registered.
+     *
+     * @param user user to remove
+     * @return true if user was registered
+     */
+    boolean unregister(User user) {
+        if (!users.remove(user.serverTag, user)) return false;
+        byName.remove(user.toString(), user);
+        if (user.resumeToken() != null) byToken.remove(user.resumeToken(), user);
+        return true;
+    }
+
+    /**
+     * Moves the user in the name index after his nick changed.
+     *
+     * @param user    user with the new nick
+     * @param oldName name of the user before the change
+     */
+    void rename(User user, String oldName) {
+        byName.remove(oldName, user);
+        String newName = user.toString();
+        byName.put(newName, user);
+        if (users.get(user.serverTag) != user) byName.remove(newName, user); // unregistered meanwhile
+    }
+
+    /**
+     * Finds the user by tag or by the start of his name.
+     *
+     * @param identity tag, nick or starting letters of <code>nick#tag</code> name
+     * @return the user if exactly one user matches, null otherwise
+     */
+    User find(String identity) {
+        try {
+            User user = users.get(Long.parseLong(identity));
+            if (user != null) return user;
+        } catch (NumberFormatException ignored) {}
+
+        var matching = byName.tailMap(identity, true);
+        var first = matching.firstEntry();
+        if (first == null || !first.getKey().startsWith(identity)) return null;
+        var second = matching.higherEntry(first.getKey());
+        return second != null && second.getKey().startsWith(identity) ? null : first.getValue();
+    }
+
+    /**
+     * @param token resume token issued to the user in SERVER_HELLO
+     * @return user with the token or null if there is none
+     */
+    User resumable(String token) { return byToken.get(token); }
+
+    /**
+     * @param tag tag of the user
+     * @return user with the tag or null if there is none
+     */
+    User get(long tag) { return users.get(tag); }
+
+    /**
+     * @return view of all registered users in no particular order
+     */
+    Collection<User> all() { return Collections.unmodifiableCollection(users.values()); }
+
+    /**
+     * @return number of registered users
+     */
+    int size() { return users.size(); }
+
+    /**
+     * @return number of {@link #PAGE_SIZE} pages of users, at least 1
+     */
+    int pages() { return Math.max(1, (size() + PAGE_SIZE - 1) / PAGE_SIZE); }
+
+    /**
+     * Returns a page of user names in name order. Users connecting and leaving meanwhile can shift the pages.
+     *
+     * @param page page number starting from 1
+     * @return names of the users on the page, empty if there is no such page
+     */
+    List<String> page(int page) {
+        List<String> names = new ArrayList<>(PAGE_SIZE);
+        if (page < 1) return names;
+        long skip = (long) (page - 1) * PAGE_SIZE;
+        for (String name : byName.keySet()) {
+            if (skip-- > 0) continue;
+            names.add(name);
+            if (names.size() == PAGE_SIZE) break;
+        }
+        return names;
+    }
+}
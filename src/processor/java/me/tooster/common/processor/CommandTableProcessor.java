@@ -0,0 +1,127 @@
+package me.tooster.common.processor;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+/**
+ * Generates alias and help tables of command enums at compile time, so commands don't read their annotations by
+ * reflection at runtime.
+ * <p>
+ * For every enum with constants annotated with <code>@Command.Alias</code> or <code>@Command.Help</code> the processor
+ * generates class <code>&lt;Enum&gt;Table</code> in the enum's package, which registers the aliases and help of all the
+ * constants, indexed by ordinal, in <code>CommandTable</code> when initialized. <code>CommandTable</code> loads the class
+ * by that name.
+ * <p>
+ * The processor is compiled before the main sources and works on annotation names only, so it doesn't depend on them.
+ */
+@SupportedAnnotationTypes({CommandTableProcessor.ALIAS, CommandTableProcessor.HELP})
+public class CommandTableProcessor extends AbstractProcessor {
+
+    static final String ALIAS         = "me.tooster.common.Command.Alias";
+    static final String HELP          = "me.tooster.common.Command.Help";
+    static final String COMMAND_TABLE = "me.tooster.common.CommandTable";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() { return SourceVersion.latestSupported(); }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> enums = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations)
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation))
+                if (element.getKind() == ElementKind.ENUM_CONSTANT)
+                    enums.add((TypeElement) element.getEnclosingElement());
+                else
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            "@" + annotation.getSimpleName() + " can be used only on command enum constants", element);
+
+        for (TypeElement commandEnum : enums) {
+            try {
+                generate(commandEnum);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Can't generate command table: " + e.getMessage(), commandEnum);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the table class of the command enum.
+     *
+     * @param commandEnum enum implementing Command
+     */
+    private void generate(TypeElement commandEnum) throws IOException {
+        Elements elements = processingEnv.getElementUtils();
+        String packageName = elements.getPackageOf(commandEnum).getQualifiedName().toString();
+        String enumName = elements.getBinaryName(commandEnum).toString();
+        // same naming as in CommandTable, nested enums are flattened: Outer$Inner -> Outer_InnerTable
+        String tableName = enumName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1)
+                .replace('$', '_') + "Table";
+
+        StringBuilder aliases = new StringBuilder();
+        StringBuilder help = new StringBuilder();
+        for (Element constant : commandEnum.getEnclosedElements()) { // in declaration order, same as ordinals
+            if (constant.getKind() != ElementKind.ENUM_CONSTANT) continue;
+
+            aliases.append("\n                new String[]{");
+            List<String> constantAliases = stringValues(constant, ALIAS);
+            for (int i = 0; i < constantAliases.size(); i++)
+                aliases.append(i > 0 ? ", " : "").append(elements.getConstantExpression(constantAliases.get(i)));
+            aliases.append("}, // ").append(constant.getSimpleName());
+
+            List<String> constantHelp = stringValues(constant, HELP);
+            help.append("\n                ")
+                    .append(constantHelp.isEmpty() ? "null" : elements.getConstantExpression(constantHelp.get(0)))
+                    .append(", // ").append(constant.getSimpleName());
+        }
+
+        String qualifiedTableName = packageName.isEmpty() ? tableName : packageName + "." + tableName;
+        try (PrintWriter out = new PrintWriter(
+                processingEnv.getFiler().createSourceFile(qualifiedTableName, commandEnum).openWriter())) {
+            if (!packageName.isEmpty()) out.printf("package %s;%n%n", packageName);
+            out.printf("/**%n");
+            out.printf(" * Aliases and help of {@link %s} generated from it's annotations.%n",
+                    commandEnum.getQualifiedName());
+            out.printf(" */%n");
+            out.printf("@javax.annotation.processing.Generated(\"%s\")%n", getClass().getName());
+            out.printf("final class %s {%n", tableName);
+            out.printf("    static {%n");
+            out.printf("        %s.register(%s.class, new String[][]{%s%n        }, new String[]{%s%n        });%n",
+                    COMMAND_TABLE, commandEnum.getQualifiedName(), aliases, help);
+            out.printf("    }%n%n");
+            out.printf("    private %s() {}%n", tableName);
+            out.printf("}%n");
+        }
+    }
+
+    /**
+     * @param element        annotated element
+     * @param annotationName qualified name of annotation with <code>value</code> of type String or String[]
+     * @return values of the annotation or empty list if element isn't annotated with it
+     */
+    private List<String> stringValues(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            var annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (!annotationType.getQualifiedName().contentEquals(annotationName)) continue;
+
+            List<String> values = new ArrayList<>();
+            var elementValues = processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+            for (var entry : elementValues.entrySet()) {
+                if (!entry.getKey().getSimpleName().contentEquals("value")) continue;
+                Object value = entry.getValue().getValue();
+                if (value instanceof List<?> list) // String[] value
+                    for (Object item : list) values.add((String) ((AnnotationValue) item).getValue());
+                else values.add((String) value);
+            }
+            return values;
+        }
+        return Collections.emptyList();
+    }
+}